@@ -0,0 +1,28 @@
+package net.okt;
+
+import net.okt.cli.BatchCommand;
+import net.okt.cli.RenderCommand;
+import net.okt.cli.SubtitlesCommand;
+
+import java.util.Arrays;
+
+/**
+ * The entry point of the program. The command line exports don't need any window, and AWT only reads
+ * {@code java.awt.headless} when it's first initialized, so this class doesn't touch AWT before the property is set.
+ * {@link Main} is a frame, and initializing it would initialize AWT.
+ */
+public class Launcher {
+    public static void main(String[] args) {
+        if (args.length > 0 && (args[0].equals("render") || args[0].equals("batch") || args[0].equals("subtitles"))) {
+            System.setProperty("java.awt.headless", "true");
+            String[] commandArgs = Arrays.copyOfRange(args, 1, args.length);
+            System.exit(switch (args[0]) {
+                case "render" -> RenderCommand.run(commandArgs);
+                case "batch" -> BatchCommand.run(commandArgs);
+                default -> SubtitlesCommand.run(commandArgs);
+            });
+        }
+
+        Main.main(args);
+    }
+}
@@ -5,6 +5,8 @@ import net.okt.system.FileDropListener;
 import net.okt.system.FileExtensionUtils;
 import net.okt.system.LyricsProcessor;
 import net.okt.system.SaveLoadManager;
+import net.okt.system.export.SubtitleExporter;
+import net.okt.system.render.ProjectSnapshot;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,6 +14,7 @@ import java.awt.dnd.DropTarget;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,7 +53,7 @@ public class Main extends JFrame {
 
         saveLoadManager = new SaveLoadManager(this);
         lyricsProcessor = new LyricsProcessor(saveLoadManager);
-        viewport = new Viewport(saveLoadManager, lyricsProcessor);
+        viewport = new Viewport(saveLoadManager);
         timeline = new Timeline(saveLoadManager, lyricsProcessor, viewport);
         textArea = getTextArea();
 
@@ -64,6 +67,9 @@ public class Main extends JFrame {
         addComponents();
     }
 
+    /**
+     * Open the editor. The command line exports start from {@link Launcher}.
+     */
     public static void main(String[] args) {
         new Main(INIT_FRAME_TITLE, args.length == 0 ? null : args[0]);
     }
@@ -81,7 +87,6 @@ public class Main extends JFrame {
         textArea.addDocumentUpdateCallback(() -> {
             saveLoadManager.setProp("text", textArea.getText());
             lyricsProcessor.setLyrics(saveLoadManager.getProp("text"));
-            viewport.updateDisplayingAreas(true);
             viewport.repaint();
             timeline.getCanvas().repaint();
         });
@@ -148,6 +153,8 @@ public class Main extends JFrame {
         // export
         JMenuItem export = getExportMenuItem(fileChooser);
         fileMenu.add(export);
+        JMenuItem exportSubtitles = getExportSubtitles(fileChooser);
+        fileMenu.add(exportSubtitles);
 
         menuBar.add(fileMenu);
         setJMenuBar(menuBar);
@@ -156,15 +163,34 @@ public class Main extends JFrame {
     private JMenuItem getExportMenuItem(JFileChooser fileChooser) {
         VideoExportDialog videoExportDialog = new VideoExportDialog(saveLoadManager, viewport, fileChooser);
         JMenuItem item = new JMenuItem("Export");
-        item.addActionListener(e -> {
-            videoExportDialog.show();
-            if (saveLoadManager.getLoadedAudio() != null)
-                timeline.timePause(); // Pause the play to prevent the GUI viewport and export rendering meddle.
-        });
+        // The export renders from its own project snapshot, so the playback can keep going.
+        item.addActionListener(e -> videoExportDialog.show());
 
         return item;
     }
 
+    private JMenuItem getExportSubtitles(JFileChooser fileChooser) {
+        JMenuItem exportSubtitles = new JMenuItem("Export Subtitles");
+        exportSubtitles.addActionListener(e -> {
+            fileChooser.setDialogTitle("Export Subtitles");
+            fileChooser.setFileFilter(FileExtensionUtils.SUBTITLE_EXT_FILTER);
+            if (fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) return;
+
+            // Default to ASS, which keeps the wipe of the words.
+            File selectedFile = fileChooser.getSelectedFile();
+            if (!FileExtensionUtils.SUBTITLE_EXT_FILTER.accept(selectedFile))
+                selectedFile = new File(selectedFile + "." + FileExtensionUtils.SUBTITLE_EXT_FILTER.getExtensions()[0]);
+
+            try {
+                new SubtitleExporter(ProjectSnapshot.of(saveLoadManager, viewport.getFont())).export(selectedFile);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, "Failed to export the subtitles: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        return exportSubtitles;
+    }
+
     private JMenuItem getNewProject() {
         JMenuItem newProject = new JMenuItem("New Project");
         newProject.addActionListener(e -> new Main(INIT_FRAME_TITLE, null));
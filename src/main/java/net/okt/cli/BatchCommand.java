@@ -0,0 +1,240 @@
+package net.okt.cli;
+
+import net.okt.system.export.ExportJob;
+import net.okt.system.export.ExportQueue;
+import net.okt.system.export.ProgressSampler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports many projects in one go: {@code okt batch jobs.txt [options]}. Every line of the jobs file is the arguments
+ * of a {@link RenderCommand}, and can also have a {@code --priority <n>}. Empty lines and lines starting with # are
+ * ignored.
+ */
+public class BatchCommand {
+    public static final String USAGE = """
+            Usage: okt batch <jobs file> [options]
+                  --jobs <n>          The maximum number of exports running at the same time. Defaults to 1.
+                  --threads <n>       The render threads shared by the running exports. Defaults to the number of
+                                      processors.
+                  --summary <file>    Also write the summary to a CSV file.
+            Every line of the jobs file is the arguments of "okt render", plus an optional --priority <n>. Exports with
+            a higher priority start first.""";
+
+    /**
+     * The interval (ms) between the progress lines of the running jobs.
+     */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    private String jobsFile, summaryFile;
+    private int maxJobs = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param args The arguments after "batch".
+     * @return The exit code.
+     */
+    public static int run(String[] args) {
+        BatchCommand command = new BatchCommand();
+        List<ExportJob> jobs;
+        try {
+            command.parseArgs(args);
+            jobs = command.readJobs();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Failed to read the jobs file: " + e.getMessage());
+            return 1;
+        }
+
+        return command.runJobs(jobs);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                if (jobsFile != null)
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                jobsFile = arg;
+                continue;
+            }
+
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value of " + arg);
+            String val = args[++i];
+            switch (arg) {
+                case "--jobs" -> maxJobs = parsePositiveInt(arg, val);
+                case "--threads" -> threads = parsePositiveInt(arg, val);
+                case "--summary" -> summaryFile = val;
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (jobsFile == null)
+            throw new IllegalArgumentException("Missing the jobs file.");
+    }
+
+    private List<ExportJob> readJobs() throws IOException {
+        List<ExportJob> jobs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Path.of(jobsFile), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            try {
+                jobs.add(parseJob(splitArgs(line)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        return jobs;
+    }
+
+    private static ExportJob parseJob(List<String> args) {
+        // Take out the priority, the rest are for the render command.
+        int priority = 0;
+        int priorityIndex = args.indexOf("--priority");
+        if (priorityIndex >= 0) {
+            if (priorityIndex + 1 >= args.size())
+                throw new IllegalArgumentException("Missing value of --priority");
+            try {
+                priority = Integer.parseInt(args.get(priorityIndex + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--priority must be an integer: " + args.get(priorityIndex + 1));
+            }
+            args.subList(priorityIndex, priorityIndex + 2).clear();
+        }
+
+        RenderCommand render = RenderCommand.parse(args.toArray(new String[0]));
+        return new ExportJob(render.getProjectFile(), priority, render::createVideoMaker);
+    }
+
+    /**
+     * Split a line to arguments at the spaces. Spaces inside double quotes don't split.
+     */
+    static List<String> splitArgs(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean isQuoted = false, hasArg = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                isQuoted = !isQuoted;
+                hasArg = true;
+            } else if (Character.isWhitespace(c) && !isQuoted) {
+                if (hasArg) args.add(arg.toString());
+                arg.setLength(0);
+                hasArg = false;
+            } else {
+                arg.append(c);
+                hasArg = true;
+            }
+        }
+        if (isQuoted)
+            throw new IllegalArgumentException("Unclosed quote.");
+        if (hasArg) args.add(arg.toString());
+
+        return args;
+    }
+
+    private static int parsePositiveInt(String option, String val) {
+        try {
+            int i = Integer.parseInt(val);
+            if (i > 0) return i;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new IllegalArgumentException(option + " must be a positive integer: " + val);
+    }
+
+    private int runJobs(List<ExportJob> jobs) {
+        ExportQueue queue = new ExportQueue(maxJobs, threads);
+        for (ExportJob job : jobs)
+            queue.submit(job);
+
+        // Cancel all the exports on Ctrl+C, so no unfinished file is left. The hook mustn't join this thread, which may
+        // be the one calling System.exit and waiting for the hook.
+        Thread shutdownHook = new Thread(() -> {
+            queue.cancelAll();
+            try {
+                queue.awaitRunAll();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        // Print the progress of the running jobs now and then.
+        Map<ExportJob, ProgressSampler> samplers = new HashMap<>();
+        ScheduledExecutorService printer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "BatchCommand-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        printer.scheduleAtFixedRate(() -> {
+            for (ExportJob job : queue.getJobs()) {
+                if (job.getState() != ExportJob.State.RUNNING) continue;
+                ProgressSampler sampler = samplers.computeIfAbsent(job, j -> new ProgressSampler(j.getProgress()));
+                System.out.println(sampler.sample().describe() + " | " + job.getName());
+            }
+        }, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+
+        List<ExportJob.Result> results;
+        try {
+            results = queue.runAll();
+        } catch (InterruptedException e) {
+            return 1;
+        } finally {
+            printer.shutdownNow();
+        }
+
+        printSummary(results);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down, the hook has cancelled the exports.
+        }
+
+        boolean isAllFinished = results.stream().allMatch(r -> r.state() == ExportJob.State.FINISHED);
+        return isAllFinished ? 0 : 1;
+    }
+
+    private void printSummary(List<ExportJob.Result> results) {
+        System.out.println("Batch summary:");
+        for (ExportJob.Result r : results) {
+            System.out.printf(Locale.ROOT, "  %-9s %8d frames %8.1f s %8.1f fps %10d bytes  %s%n", r.state(),
+                    r.frames(), r.wallTime() / 1000.0, r.getFps(), r.outputSize(), r.name());
+            if (r.message() != null)
+                System.out.println("            " + r.message());
+        }
+
+        if (summaryFile == null) return;
+        try (PrintWriter writer = new PrintWriter(summaryFile, StandardCharsets.UTF_8)) {
+            writer.println("project,state,frames,wall_time_ms,fps,output_bytes,message");
+            for (ExportJob.Result r : results) {
+                writer.printf(Locale.ROOT, "%s,%s,%d,%d,%.2f,%d,%s%n", quote(r.name()), r.state(), r.frames(),
+                        r.wallTime(), r.getFps(), r.outputSize(), r.message() == null ? "" : quote(r.message()));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write the summary: " + e.getMessage());
+        }
+    }
+
+    private static String quote(String csvField) {
+        return '"' + csvField.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,308 @@
+package net.okt.cli;
+
+import net.okt.system.SaveLoadManager;
+import net.okt.system.VideoMaker;
+import net.okt.system.export.BackgroundVideo;
+import net.okt.system.export.DraftMode;
+import net.okt.system.export.EncoderProfile;
+import net.okt.system.export.ExportProgress;
+import net.okt.system.export.ProgressSampler;
+import net.okt.system.render.ProjectSnapshot;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.awt.*;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The headless export: {@code okt render project.properties -o out.mp4 [options]}. It loads the project without any
+ * window and runs a {@link VideoMaker} on it, so it works on machines without a display.
+ */
+public class RenderCommand {
+    public static final String USAGE = """
+            Usage: okt render <project.properties> -o <output> [options]
+              -o, --output <file>     The output video file.
+                  --format <format>   The container format. Defaults to the extension of the output file.
+                                      png-sequence writes a PNG image of every frame to the output folder. rgba and
+                                      y4m stream the uncompressed frames to the output file or named pipe. These have
+                                      no audio.
+                  --codec <codec>     h264, h265, av1, vp9 or png. Defaults to h264.
+                  --fps <fps>         Defaults to 30.
+                  --bitrate <kbps>    Defaults to 5000. Not used by profiles with a crf.
+                  --profile <name>    The encoder profile: bitrate, karaoke, karaoke-fast or karaoke-small. Defaults
+                                      to the profile saved in the project, or bitrate.
+                  --encoder <options> Change settings of the profile, like "crf=18,gop=5". The keys are preset, crf,
+                                      tune, threads, gop (seconds) and pix_fmt.
+                  --length <ms>       The length of the video. Defaults to the length of the audio.
+                  --threads <n>       The number of render threads. Defaults to the number of processors.
+                  --segments <n>      The maximum number of segments to encode concurrently. Defaults to 1.
+                  --memory <MB>       The memory for the frames in flight, which stays the same for any length and
+                                      fps. Defaults to 1024. More lets more render threads work at high resolutions.
+                  --resumable         Keep the encoded segments in <output>.parts. Running the same export again
+                                      continues a stopped one, or only encodes the segments with changed frames.
+                  --background <file> A video to show the lyrics over, decoded and composited in the same pass.
+                  --background-loop   Start the background video over when it ends, instead of keeping its last
+                                      frame.
+                  --draft             Export a quick preview at a lower resolution and fps with the fastest preset.
+                  --draft-scale <f>   The fraction of the resolution of a draft. Defaults to 0.5.
+                  --draft-fps <fps>   The fps of a draft. Defaults to 15.""";
+
+    /**
+     * The interval (ms) between the progress lines.
+     */
+    private static final int PROGRESS_INTERVAL = 1000;
+    /**
+     * The short codec names of the command line, mapped to the keys of {@link VideoMaker#CODEC_MAP}.
+     */
+    private static final Map<String, String> CODEC_NAMES = Map.of(
+            "h264", "H.264/AVC",
+            "h265", "H.265/HEVC",
+            "hevc", "H.265/HEVC",
+            "av1", "AV1",
+            "vp9", "VP9",
+            "png", "PNG(transparent background)"
+    );
+
+    private String projectFile, output, format;
+    private String codec = "h264";
+    private int fps = 30;
+    private int bitrate = 5000;
+    private int length = -1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int segments = 1;
+    private int memory = (int) (VideoMaker.DEFAULT_MEMORY_LIMIT >> 20);
+    private boolean resumable;
+    private EncoderProfile profile;
+    private String encoderOptions;
+    private String background;
+    private boolean loopBackground;
+    private boolean draft;
+    private float draftScale = DraftMode.DEFAULT.scale();
+    private int draftFps = DraftMode.DEFAULT.fps();
+
+    /**
+     * @param args The arguments after "render".
+     * @return The exit code.
+     */
+    public static int run(String[] args) {
+        RenderCommand command;
+        try {
+            command = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        return command.render();
+    }
+
+    /**
+     * Parse the arguments of a render command.
+     *
+     * @throws IllegalArgumentException If the arguments are invalid.
+     */
+    static RenderCommand parse(String[] args) {
+        RenderCommand command = new RenderCommand();
+        command.parseArgs(args);
+        return command;
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                if (projectFile != null)
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                projectFile = arg;
+                continue;
+            }
+            if (arg.equals("--resumable")) {
+                resumable = true;
+                continue;
+            }
+            if (arg.equals("--background-loop")) {
+                loopBackground = true;
+                continue;
+            }
+            if (arg.equals("--draft")) {
+                draft = true;
+                continue;
+            }
+
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value of " + arg);
+            String val = args[++i];
+            switch (arg) {
+                case "-o", "--output" -> output = val;
+                case "--format" -> format = val;
+                case "--codec" -> codec = val.toLowerCase();
+                case "--fps" -> fps = parsePositiveInt(arg, val);
+                case "--bitrate" -> bitrate = parsePositiveInt(arg, val);
+                case "--length" -> length = parsePositiveInt(arg, val);
+                case "--threads" -> threads = parsePositiveInt(arg, val);
+                case "--segments" -> segments = parsePositiveInt(arg, val);
+                case "--memory" -> memory = parsePositiveInt(arg, val);
+                case "--profile" -> {
+                    profile = EncoderProfile.getBuiltIn(val);
+                    if (profile == null)
+                        throw new IllegalArgumentException("Unknown encoder profile: " + val);
+                }
+                case "--encoder" -> {
+                    // Check the options now, they are applied to the profile of the project when it's loaded.
+                    EncoderProfile.DEFAULT.withOptions(val);
+                    encoderOptions = val;
+                }
+                case "--background" -> background = val;
+                case "--draft-scale" -> draftScale = parseScale(arg, val);
+                case "--draft-fps" -> draftFps = parsePositiveInt(arg, val);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (projectFile == null)
+            throw new IllegalArgumentException("Missing the project file.");
+        if (output == null)
+            throw new IllegalArgumentException("Missing the output file.");
+        if (!CODEC_NAMES.containsKey(codec))
+            throw new IllegalArgumentException("Unknown codec: " + codec);
+        if (format == null) {
+            int dot = output.lastIndexOf('.');
+            if (dot < 0)
+                throw new IllegalArgumentException("Can't tell the format from the output file, use --format.");
+            format = output.substring(dot + 1);
+        }
+        if (background != null && format.equals(VideoMaker.IMAGE_SEQUENCE_FORMAT))
+            throw new IllegalArgumentException("An image sequence can't have a background video.");
+    }
+
+    private static float parseScale(String option, String val) {
+        try {
+            float f = Float.parseFloat(val);
+            if (f > 0 && f <= 1) return f;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new IllegalArgumentException(option + " must be in (0, 1]: " + val);
+    }
+
+    private static int parsePositiveInt(String option, String val) {
+        try {
+            int i = Integer.parseInt(val);
+            if (i > 0) return i;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new IllegalArgumentException(option + " must be a positive integer: " + val);
+    }
+
+    String getProjectFile() {
+        return projectFile;
+    }
+
+    String getOutput() {
+        return new File(output).getAbsolutePath();
+    }
+
+    /**
+     * Load the project and create the video maker of this command.
+     *
+     * @param maxRenderThreads The maximum number of render threads. The --threads option can only make it smaller.
+     * @throws IOException If the audio of the project is missing or can't be read.
+     */
+    VideoMaker createVideoMaker(int maxRenderThreads, ExportProgress progress) throws IOException {
+        SaveLoadManager saveLoadManager = new SaveLoadManager(null);
+        File audioFile = saveLoadManager.loadProject(new File(projectFile));
+        if (!audioFile.exists())
+            throw new FileNotFoundException("Audio file missing: " + audioFile.getAbsolutePath());
+        saveLoadManager.setProp("audio", audioFile.getPath());
+
+        if (background != null && !new File(background).isFile())
+            throw new FileNotFoundException("Background video missing: " + new File(background).getAbsolutePath());
+
+        int timeLength = length < 0 ? getAudioLength(audioFile) : length;
+
+        Font font = new Font(saveLoadManager.getProp("font"), Font.BOLD, 1);
+        ProjectSnapshot snapshot = ProjectSnapshot.of(saveLoadManager, font);
+
+        EncoderProfile encoderProfile = profile;
+        if (encoderProfile == null) {
+            try {
+                encoderProfile = EncoderProfile.fromProps(snapshot.getProp(EncoderProfile.PROP_NAME),
+                        snapshot.getProp(EncoderProfile.PROP_OPTIONS));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid encoder profile in the project: " + e.getMessage());
+            }
+        }
+        if (encoderOptions != null)
+            encoderProfile = encoderProfile.withOptions(encoderOptions);
+
+        VideoMaker videoMaker = new VideoMaker(getOutput(), format, CODEC_NAMES.get(codec), fps, bitrate * 1000,
+                timeLength, snapshot.getPropInt("resolutionX"), snapshot.getPropInt("resolutionY"),
+                Math.min(threads, maxRenderThreads), segments, resumable, encoderProfile,
+                background == null ? null : new BackgroundVideo.Source(background, loopBackground),
+                draft ? new DraftMode(draftScale, draftFps, true) : null, snapshot, progress);
+        videoMaker.setMemoryLimit((long) memory << 20);
+        return videoMaker;
+    }
+
+    private int render() {
+        ExportProgress progress = new ExportProgress();
+        VideoMaker videoMaker;
+        try {
+            videoMaker = createVideoMaker(threads, progress);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        // Stop the export and remove the unfinished file on Ctrl+C.
+        Thread shutdownHook = new Thread(() -> {
+            videoMaker.stopProcessing();
+            try {
+                videoMaker.join();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        ProgressSampler sampler = new ProgressSampler(progress);
+        ScheduledExecutorService printer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RenderCommand-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        printer.scheduleAtFixedRate(() -> System.out.println(sampler.sample().describe()),
+                PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+
+        videoMaker.start();
+        try {
+            videoMaker.join();
+        } catch (InterruptedException e) {
+            videoMaker.stopProcessing();
+            return 1;
+        } finally {
+            printer.shutdownNow();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down, the hook has stopped the export.
+        }
+
+        return progress.getState() == ExportProgress.State.FINISHED ? 0 : 1;
+    }
+
+    private static int getAudioLength(File audioFile) throws FrameGrabber.Exception {
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(audioFile)) {
+            grabber.start();
+            return (int) (grabber.getLengthInTime() / 1000);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package net.okt.cli;
+
+import net.okt.system.SaveLoadManager;
+import net.okt.system.export.SubtitleExporter;
+import net.okt.system.render.ProjectSnapshot;
+
+import java.awt.*;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Exports the lyrics of projects as karaoke subtitles: {@code okt subtitles project.properties [options]}. The audio
+ * of the projects is not needed.
+ */
+public class SubtitlesCommand {
+    public static final String USAGE = """
+            Usage: okt subtitles <project.properties>... [options]
+                  --format <format>   ass or vtt. Defaults to ass.
+                  --output-dir <dir>  Where to write the subtitles. Defaults to the folder of each project.
+            The subtitles are named after the projects, like song.properties -> song.ass.""";
+
+    private final List<String> projectFiles = new ArrayList<>();
+    private String format = "ass";
+    private String outputDir;
+
+    /**
+     * @param args The arguments after "subtitles".
+     * @return The exit code.
+     */
+    public static int run(String[] args) {
+        SubtitlesCommand command = new SubtitlesCommand();
+        try {
+            command.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        return command.export();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                projectFiles.add(arg);
+                continue;
+            }
+
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value of " + arg);
+            String val = args[++i];
+            switch (arg) {
+                case "--format" -> format = val.toLowerCase(Locale.ROOT);
+                case "--output-dir" -> outputDir = val;
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (projectFiles.isEmpty())
+            throw new IllegalArgumentException("Missing the project file.");
+        if (!List.of(SubtitleExporter.EXTENSIONS).contains(format))
+            throw new IllegalArgumentException("Unknown subtitle format: " + format);
+    }
+
+    private int export() {
+        int exitCode = 0;
+        for (String projectFile : projectFiles) {
+            File project = new File(projectFile);
+            File output = getOutput(project);
+            try {
+                if (!project.isFile())
+                    throw new FileNotFoundException("Project file missing: " + project.getAbsolutePath());
+                SaveLoadManager saveLoadManager = new SaveLoadManager(null);
+                saveLoadManager.loadProject(project);
+                Font font = new Font(saveLoadManager.getProp("font"), Font.BOLD, 1);
+                new SubtitleExporter(ProjectSnapshot.of(saveLoadManager, font)).export(output);
+                System.out.println("Exported " + output.getPath());
+            } catch (IOException e) {
+                System.err.println("Failed to export the subtitles of " + projectFile + ": " + e.getMessage());
+                exitCode = 1;
+            }
+        }
+
+        return exitCode;
+    }
+
+    /**
+     * @return The subtitle file of the project, with the extension of the format.
+     */
+    private File getOutput(File project) {
+        String name = project.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        name += "." + format;
+
+        File dir = outputDir != null ? new File(outputDir) : project.getAbsoluteFile().getParentFile();
+        return new File(dir, name);
+    }
+}
@@ -1,11 +1,24 @@
 package net.okt.gui;
 
+import net.okt.system.export.ExportProgress;
+import net.okt.system.export.ProgressSampler;
+
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ProgressBarDialog extends JDialog {
+    /**
+     * The interval (ms) between the updates of a watched progress.
+     */
+    private static final int UPDATE_INTERVAL = 250;
+
     public final JProgressBar progressBar;
+    private final JLabel ratesLabel;
 
     private Runnable manualCloseOperation;
 
@@ -16,11 +29,14 @@ public class ProgressBarDialog extends JDialog {
     public ProgressBarDialog(String title, String closingMessage) {
         this.progressBar = new JProgressBar();
         this.progressBar.setStringPainted(true);
+        this.ratesLabel = new JLabel(" ");
+        this.ratesLabel.setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 4));
 
         setTitle(title);
         setModal(true);
         setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
-        getContentPane().add(progressBar);
+        getContentPane().add(progressBar, BorderLayout.CENTER);
+        getContentPane().add(ratesLabel, BorderLayout.SOUTH);
         setLocationRelativeTo(null); // This sets the dialog position to the middle of the screen.
         pack();
 
@@ -38,6 +54,50 @@ public class ProgressBarDialog extends JDialog {
         });
     }
 
+    /**
+     * Show the given progress until it ends. The progress is sampled on a background thread at a fixed rate, since the
+     * bytes written are read from the file system, and only the samples are passed to the event dispatch thread. The
+     * export threads never touch the Swing components.
+     */
+    public void watch(ExportProgress progress) {
+        ProgressSampler sampler = new ProgressSampler(progress);
+        ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ProgressBarDialog-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        updater.scheduleAtFixedRate(() -> {
+            ProgressSampler.Sample sample = sampler.sample();
+            SwingUtilities.invokeLater(() -> update(sample, progress.getMessage()));
+            // The sample of the end is the last one.
+            if (sample.state() != ExportProgress.State.RUNNING)
+                updater.shutdown();
+        }, UPDATE_INTERVAL, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param message The message of the end of the export, or null if it's still running.
+     */
+    private void update(ProgressSampler.Sample sample, String message) {
+        progressBar.setMaximum(sample.totalFrames());
+        progressBar.setValue(sample.recordedFrames());
+        progressBar.setString(sample.describeFrames());
+        ratesLabel.setText(sample.describeRates());
+        if (getWidth() < getPreferredSize().width)
+            pack();
+
+        switch (sample.state()) {
+            case RUNNING -> {
+            }
+            case FINISHED -> showFinish(message);
+            case FAILED -> {
+                dispose();
+                JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            case STOPPED -> dispose();
+        }
+    }
+
     public void showFinish(String msg) {
         dispose();
         JOptionPane.showMessageDialog(null, msg);
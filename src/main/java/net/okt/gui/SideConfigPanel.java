@@ -44,7 +44,6 @@ public class SideConfigPanel extends JScrollPane {
 
         var resolutionPanel = new DoubleTextBarPanel("Resolution", 4, "w:", "h:",
                 "resolutionX", "resolutionY", saveLoadManager, viewport);
-        resolutionPanel.addDocumentListener(viewport::resetBufferedImage);
         viewport.resetBufferedImage(); // init the buffered image, or else it will be null.
 
         Color backgroundColor = new Color(saveLoadManager.getPropInt("backgroundColor"), true);
@@ -70,17 +69,11 @@ public class SideConfigPanel extends JScrollPane {
 
         var defaultFontSizeBar =
                 new SlidableNumberBar("Default Font Size", 3, "defaultFontSize", saveLoadManager);
-        defaultFontSizeBar.addDocumentListener(() -> {
-            viewport.updateDisplayingAreas(true);
-            viewport.repaint();
-        });
+        defaultFontSizeBar.addDocumentListener(viewport::repaint);
 
         var linkedFontSizeBar =
                 new SlidableNumberBar("Linked Font Size", 3, "linkedFontSize", saveLoadManager);
-        linkedFontSizeBar.addDocumentListener(() -> {
-            viewport.updateDisplayingAreas(true);
-            viewport.repaint();
-        });
+        linkedFontSizeBar.addDocumentListener(viewport::repaint);
 
         var lineIndentSizeBar =
                 new SlidableNumberBar("2nd Line Indent", 3, "indentSize", saveLoadManager);
@@ -198,7 +191,7 @@ public class SideConfigPanel extends JScrollPane {
 
             saveLoadManager.setProp("font", selectedString);
             viewport.setFont(new Font(selectedString, Font.BOLD, 1));
-            viewport.updateDisplayingAreas(true);
+            viewport.repaint();
         });
 
         return comboBox;
@@ -1,11 +1,19 @@
 package net.okt.gui;
 
+import net.okt.system.FileExtensionUtils;
 import net.okt.system.SaveLoadManager;
 import net.okt.system.VideoMaker;
+import net.okt.system.export.BackgroundVideo;
+import net.okt.system.export.DraftMode;
+import net.okt.system.export.EncoderProfile;
+import net.okt.system.export.ExportProgress;
+import net.okt.system.render.ProjectSnapshot;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class VideoExportDialog {
     private final SaveLoadManager saveLoadManager;
@@ -14,10 +22,22 @@ public class VideoExportDialog {
     private final JComboBox<String> codecComboBox;
     private final JComboBox<Integer> fpsComboBox;
     private final JComboBox<Integer> bitrateComboBox;
+    private final JComboBox<String> profileComboBox;
+    private final JComboBox<Integer> renderThreadsComboBox;
+    private final JComboBox<Integer> segmentsComboBox;
+    private final JComboBox<Integer> memoryComboBox;
     private final SlidableNumberBar timeBar;
     private final TextFieldFileChooser textFieldFileChooser;
     private final JCheckBox fullVidCheckBox;
+    private final JCheckBox resumableCheckBox;
+    private final JCheckBox draftCheckBox;
+    private final JTextField backgroundTextField;
+    private final JCheckBox loopBackgroundCheckBox;
     private final JComponent[] inputs;
+    /**
+     * The profiles in {@link #profileComboBox} by their names. The built-in ones, plus the one of the project.
+     */
+    private final Map<String, EncoderProfile> profiles = new LinkedHashMap<>();
 
     public VideoExportDialog(SaveLoadManager saveLoadManager, Viewport viewport, JFileChooser fileChooser) {
         this.saveLoadManager = saveLoadManager;
@@ -27,15 +47,45 @@ public class VideoExportDialog {
         String[] codecOptions = VideoMaker.CODEC_MAP.keySet().toArray(new String[0]);
         Integer[] fpsOptions = {24, 25, 30, 50, 60, 120};
         Integer[] bitrateOptions = {500, 1000, 2500, 5000, 7500, 10000, 15000, 20000};
+        int processors = Runtime.getRuntime().availableProcessors();
+        Integer[] renderThreadsOptions = new Integer[processors];
+        for (int i = 0; i < processors; i++)
+            renderThreadsOptions[i] = i + 1;
+        Integer[] segmentsOptions = {1, 2, 4, 8, 16, 32};
+        Integer[] memoryOptions = {256, 512, 1024, 2048, 4096, 8192};
 
         this.formatComboBox = new JComboBox<>(formatOptions);
         this.codecComboBox = new JComboBox<>(codecOptions);
         this.fpsComboBox = new JComboBox<>(fpsOptions);
         this.bitrateComboBox = new JComboBox<>(bitrateOptions);
+        this.profileComboBox = new JComboBox<>();
+        // The bitrate is only used by the profiles without a constant quality.
+        this.profileComboBox.addActionListener(e -> {
+            EncoderProfile profile = getSelectedProfile();
+            bitrateComboBox.setEnabled(profile == null || !profile.isConstantQuality());
+            profileComboBox.setToolTipText(profile == null ? null : profile.toOptions());
+        });
+        this.renderThreadsComboBox = new JComboBox<>(renderThreadsOptions);
+        this.renderThreadsComboBox.setSelectedItem(processors); // use all the cores by default.
+        this.segmentsComboBox = new JComboBox<>(segmentsOptions);
+        this.memoryComboBox = new JComboBox<>(memoryOptions);
+        this.memoryComboBox.setSelectedItem((int) (VideoMaker.DEFAULT_MEMORY_LIMIT >> 20));
+        this.memoryComboBox.setToolTipText("The memory for the frames being rendered and encoded. It doesn't grow " +
+                "with the length or the fps, but at high resolutions more of it keeps more render threads busy.");
         this.timeBar = new SlidableNumberBar(null, 7, 45000);
         this.fullVidCheckBox = new JCheckBox("Full Length", true);
         // Update timeBar state when checking/unchecking the checkbox.
         this.fullVidCheckBox.addItemListener(e -> updateTimeBarState());
+        this.draftCheckBox = new JCheckBox("Draft Preview", false);
+        this.draftCheckBox.setToolTipText("Export a quick preview at half the resolution and a lower fps.");
+        this.resumableCheckBox = new JCheckBox("Resumable", false);
+        this.resumableCheckBox.setToolTipText("Keep the encoded parts next to the video. Exporting to the same " +
+                "file with the same settings again continues a cancelled export, or only encodes the parts that have " +
+                "changed since the last one.");
+        this.backgroundTextField = new JTextField(20);
+        this.backgroundTextField.setToolTipText("A video to show the lyrics over. Leave it empty for the " +
+                "background color of the project.");
+        this.loopBackgroundCheckBox = new JCheckBox("Loop", true);
         String file = fileChooser.getCurrentDirectory() + File.separator + "output";
         this.textFieldFileChooser = new TextFieldFileChooser(file);
         // If the selected format is changed, also change to the file chooser.
@@ -52,8 +102,22 @@ public class VideoExportDialog {
                 codecComboBox,
                 new JLabel("Fps:"),
                 fpsComboBox,
+                new JLabel("Encoder Profile:"),
+                profileComboBox,
                 new JLabel("Bitrate(kbps):"),
                 bitrateComboBox,
+                new JLabel("Render Threads:"),
+                renderThreadsComboBox,
+                new JLabel("Encode Segments:"),
+                segmentsComboBox,
+                new JLabel("Frame Memory(MB):"),
+                memoryComboBox,
+                new JLabel("Checkpoints:"),
+                resumableCheckBox,
+                new JLabel("Quality:"),
+                draftCheckBox,
+                new JLabel("Background Video:"),
+                getBackgroundPanel(),
                 new JLabel("Time Length(ms):"),
                 getVidLengthPanel(),
                 new JLabel("Save Location:"),
@@ -76,6 +140,7 @@ public class VideoExportDialog {
 
         // We should update the time bar state every time the dialog is shown.
         updateTimeBarState();
+        updateProfiles();
 
         // Show the option dialog.
         int option = JOptionPane.showConfirmDialog(null, inputs, "Export To Video",
@@ -85,10 +150,15 @@ public class VideoExportDialog {
             int time = timeBar.getVal();
             Integer fps = (Integer) fpsComboBox.getSelectedItem();
             Integer bitrate = (Integer) (bitrateComboBox.getSelectedItem());
+            Integer renderThreads = (Integer) renderThreadsComboBox.getSelectedItem();
+            Integer segments = (Integer) segmentsComboBox.getSelectedItem();
+            Integer memory = (Integer) memoryComboBox.getSelectedItem();
+            EncoderProfile profile = getSelectedProfile();
 
             String selectedFormat = (String) formatComboBox.getSelectedItem();
             String selectedCodec = (String) codecComboBox.getSelectedItem();
-            if (fps == null || bitrate == null || selectedCodec == null)
+            if (fps == null || bitrate == null || renderThreads == null || segments == null || memory == null ||
+                    selectedCodec == null || profile == null)
                 throw new NullPointerException("One of the combo boxes selected value is null");
             bitrate *= 1000;
 
@@ -105,14 +175,36 @@ public class VideoExportDialog {
 
             String filePath = textFieldFileChooser.getSelectedFile().getAbsolutePath();
 
-            int videoWidth = viewport.getBufferedImage().getWidth();
-            int videoHeight = viewport.getBufferedImage().getHeight();
+            String backgroundFile = backgroundTextField.getText().strip();
+            if (!backgroundFile.isEmpty() && !new File(backgroundFile).isFile()) {
+                JOptionPane.showMessageDialog(
+                        null, "Background video doesn't exist!",
+                        "WARNING", JOptionPane.WARNING_MESSAGE
+                );
+                show();
+                return;
+            }
+            BackgroundVideo.Source background = backgroundFile.isEmpty() ? null :
+                    new BackgroundVideo.Source(backgroundFile, loopBackgroundCheckBox.isSelected());
+
+            // Remember the profile in the project.
+            saveLoadManager.setProp(EncoderProfile.PROP_NAME, profile.name());
+            saveLoadManager.setProp(EncoderProfile.PROP_OPTIONS, profile.toOptions());
+
+            // Take a snapshot so that editing the project during the export won't affect the output.
+            ProjectSnapshot snapshot = ProjectSnapshot.of(saveLoadManager, viewport.getFont());
+            int videoWidth = snapshot.getPropInt("resolutionX");
+            int videoHeight = snapshot.getPropInt("resolutionY");
 
             ProgressBarDialog progressBarDialog =
                     new ProgressBarDialog("Progress", "Are you sure you want to cancel the output?");
+            ExportProgress progress = new ExportProgress();
+            progressBarDialog.watch(progress);
 
             VideoMaker videoMaker = new VideoMaker(filePath, selectedFormat, selectedCodec, fps, bitrate, time,
-                    videoWidth, videoHeight, viewport, saveLoadManager, progressBarDialog);
+                    videoWidth, videoHeight, renderThreads, segments, resumableCheckBox.isSelected(), profile,
+                    background, draftCheckBox.isSelected() ? DraftMode.DEFAULT : null, snapshot, progress);
+            videoMaker.setMemoryLimit((long) memory << 20);
 
             // Start the video processing on a separated thread so the progress bar can be updated at the
             videoMaker.start();
@@ -122,6 +214,51 @@ public class VideoExportDialog {
         }
     }
 
+    /**
+     * Fill {@link #profileComboBox} with the built-in profiles and the profile of the project, and select the latter.
+     */
+    private void updateProfiles() {
+        EncoderProfile projectProfile;
+        try {
+            projectProfile = EncoderProfile.fromProps(saveLoadManager.getProp(EncoderProfile.PROP_NAME),
+                    saveLoadManager.getProp(EncoderProfile.PROP_OPTIONS));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid encoder profile in the project: " + e.getMessage());
+            projectProfile = EncoderProfile.DEFAULT;
+        }
+
+        profiles.clear();
+        for (EncoderProfile profile : EncoderProfile.BUILT_IN)
+            profiles.put(profile.name(), profile);
+        profiles.put(projectProfile.name(), projectProfile);
+
+        profileComboBox.removeAllItems();
+        for (String name : profiles.keySet())
+            profileComboBox.addItem(name);
+        profileComboBox.setSelectedItem(projectProfile.name());
+    }
+
+    private EncoderProfile getSelectedProfile() {
+        return profiles.get((String) profileComboBox.getSelectedItem());
+    }
+
+    private JPanel getBackgroundPanel() {
+        JButton browseButton = new JButton(UIManager.getIcon("FileView.directoryIcon"));
+        browseButton.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser(backgroundTextField.getText());
+            fileChooser.setFileFilter(FileExtensionUtils.VIDEO_EXT_FILTER);
+            if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION)
+                backgroundTextField.setText(fileChooser.getSelectedFile().getAbsolutePath());
+        });
+
+        JPanel backgroundPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        backgroundPanel.add(backgroundTextField);
+        backgroundPanel.add(browseButton);
+        backgroundPanel.add(loopBackgroundCheckBox);
+
+        return backgroundPanel;
+    }
+
     private JPanel getVidLengthPanel() {
         JPanel timeLengthPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         timeLengthPanel.add(fullVidCheckBox);
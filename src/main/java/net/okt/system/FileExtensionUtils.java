@@ -9,6 +9,16 @@ public class FileExtensionUtils {
         "m4a", "mp3", "aac", "ogg", "flac", "alac", "wav", "aiff", "dsd", "pcm"
     );
 
+    public static final FileNameExtensionFilter VIDEO_EXT_FILTER = new FileNameExtensionFilter(
+            "mp4, mov, mkv, webm, avi",
+            "mp4", "mov", "mkv", "webm", "avi"
+    );
+
+    public static final FileNameExtensionFilter SUBTITLE_EXT_FILTER = new FileNameExtensionFilter(
+            "ass, vtt",
+            "ass", "vtt"
+    );
+
     public static final FileNameExtensionFilter PROPS_EXT_FILTER = new FileNameExtensionFilter(
             "properties",
             "properties"
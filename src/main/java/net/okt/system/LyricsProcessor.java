@@ -38,6 +38,18 @@ public class LyricsProcessor {
         this.marks = saveLoadManager.getMarks();
     }
 
+    /**
+     * Create a processor that works on the given marks without a {@link SaveLoadManager}. {@link #setTime(int)} is not
+     * available for it, use {@link #getTimeState(int, int, int)} instead.
+     * <p>
+     * Once the lyrics are set, all the queries of such a processor are read-only, so it can be shared between threads
+     * as long as the marks list is not modified.
+     */
+    public LyricsProcessor(List<Integer> marks) {
+        this.saveLoadManager = null;
+        this.marks = marks;
+    }
+
     public static boolean isEasternChar(char c) {
         Character.UnicodeBlock ub = Character.UnicodeBlock.of(c);
         return ub == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS ||
@@ -67,6 +79,19 @@ public class LyricsProcessor {
         return lineStartMarks.get(index);
     }
 
+    /**
+     * @return The mark at the end of the given line. The text of the line is held by the marks from
+     * {@link #getStartMarkAtLine(int)} to this one.
+     */
+    public int getEndMarkAtLine(int line) {
+        if (!isBlankLine(line + 1))
+            return getStartMarkAtLine(line + 1);
+
+        // The last line of a paragraph ends at the end of the paragraph.
+        int paragraph = Math.min(getParagraphAtLine(line), paragraphEndMarks.size() - 1);
+        return paragraphEndMarks.get(paragraph);
+    }
+
     public List<String> getLyricsLines() {
         return lyricsLines;
     }
@@ -134,6 +159,13 @@ public class LyricsProcessor {
         else return -index - 1;
     }
 
+    /**
+     * @return The marks that are the end of a paragraph, in order. The last one is the end of the whole lyrics.
+     */
+    public List<Integer> getParagraphEndMarks() {
+        return Collections.unmodifiableList(paragraphEndMarks);
+    }
+
     /**
      * @return If mark is the end of a paragraph.
      */
@@ -187,8 +219,31 @@ public class LyricsProcessor {
             return;
         }
 
-        int readyDotsPeriod = saveLoadManager.getPropInt("dotsPeriod");
-        int textDisappearTime = saveLoadManager.getPropInt("textDisappearTime");
+        TimeState state = getTimeState(time, saveLoadManager.getPropInt("dotsPeriod"),
+                saveLoadManager.getPropInt("textDisappearTime"));
+
+        displayingLines[0] = state.displayingLines[0];
+        displayingLines[1] = state.displayingLines[1];
+        shouldDisplayText = state.shouldDisplayText;
+        readyDotsPercentage = state.readyDotsPercentage;
+    }
+
+    /**
+     * Calculate the values bond with time position without changing this processor. See {@link #setTime(int)} for the
+     * rules.
+     *
+     * @param time              The time to calculate at.
+     * @param readyDotsPeriod   The "dotsPeriod" property.
+     * @param textDisappearTime The "textDisappearTime" property.
+     * @return The state at the given time.
+     */
+    public TimeState getTimeState(int time, int readyDotsPeriod, int textDisappearTime) {
+        if (marks.isEmpty() || lyrics == null)
+            return new TimeState(new int[]{0, 0}, false, 0);
+
+        int[] displayingLines = new int[2];
+        boolean shouldDisplayText;
+        float readyDotsPercentage;
 
         // Find the paragraph it's at and find the start line of it.
         int paragraph = getParagraphAtTime(time, readyDotsPeriod);
@@ -243,6 +298,8 @@ public class LyricsProcessor {
             shouldDisplayText = true;
             readyDotsPercentage = 0;
         }
+
+        return new TimeState(displayingLines, shouldDisplayText, readyDotsPercentage);
     }
 
     /**
@@ -441,6 +498,16 @@ public class LyricsProcessor {
         return index - 1 + paragraph;
     }
 
+    /**
+     * The values bond with a time position. See {@link #setTime(int)}.
+     *
+     * @param displayingLines     The 2 lines that should be displayed. Should not be modified.
+     * @param shouldDisplayText   If the lyrics should be displayed.
+     * @param readyDotsPercentage The progress of the ready dots.
+     */
+    public record TimeState(int[] displayingLines, boolean shouldDisplayText, float readyDotsPercentage) {
+    }
+
     /**
      * @return If the given line is a blank line. (paragraph gap)
      */
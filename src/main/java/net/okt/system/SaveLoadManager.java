@@ -5,6 +5,7 @@ import net.okt.audioUtils.Audio;
 import net.okt.audioUtils.BoxWaveform;
 import net.okt.gui.LineNumberedScrollableTextArea;
 import net.okt.gui.Timeline;
+import net.okt.system.render.RenderSettings;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,6 +13,9 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import static net.okt.gui.Timeline.PIXEL_TIME_RATIO;
@@ -23,7 +27,16 @@ public class SaveLoadManager {
     private final Main mainFrame;
     private final ArrayList<Integer> marks = new ArrayList<>();
     private final Properties props = new Properties();
+    private final List<RenderSettingsListener> renderSettingsListeners = new ArrayList<>();
     private Audio loadedAudio;
+    /**
+     * Increased every time a property is changed. Used to check if a copy of the properties is outdated.
+     */
+    private int propsVersion;
+    /**
+     * The settings of the current properties, or null if a property of them has changed since they are parsed.
+     */
+    private RenderSettings renderSettings;
 
     public SaveLoadManager(Main mainFrame) {
         this.mainFrame = mainFrame;
@@ -111,10 +124,62 @@ public class SaveLoadManager {
 
     public void setProp(String key, String val) {
         props.setProperty(key, val);
+        propsVersion++;
+
+        if (RenderSettings.PROP_KEYS.contains(key))
+            renderSettingsChanged();
     }
 
     public void setProp(String key, int val) {
-        props.setProperty(key, String.valueOf(val));
+        setProp(key, String.valueOf(val));
+    }
+
+    /**
+     * @return A copy of all the properties. Changes to it won't affect this manager.
+     */
+    public Map<String, String> copyProps() {
+        Map<String, String> copy = new HashMap<>();
+        for (String key : props.stringPropertyNames())
+            copy.put(key, props.getProperty(key));
+
+        return copy;
+    }
+
+    /**
+     * @return A number that changes every time a property is changed.
+     */
+    public int getPropsVersion() {
+        return propsVersion;
+    }
+
+    /**
+     * @return The settings of the current properties. They are only parsed again after a property of them changes.
+     */
+    public RenderSettings getRenderSettings() {
+        if (renderSettings == null)
+            renderSettings = new RenderSettings(copyProps());
+        return renderSettings;
+    }
+
+    /**
+     * Add a listener that gets the new settings every time a property of them changes, including when a project is
+     * loaded.
+     */
+    public void addRenderSettingsListener(RenderSettingsListener listener) {
+        renderSettingsListeners.add(listener);
+    }
+
+    private void renderSettingsChanged() {
+        renderSettings = null;
+        if (renderSettingsListeners.isEmpty()) return;
+
+        RenderSettings settings = getRenderSettings();
+        for (RenderSettingsListener listener : renderSettingsListeners)
+            listener.renderSettingsChanged(settings);
+    }
+
+    public interface RenderSettingsListener {
+        void renderSettingsChanged(RenderSettings settings);
     }
 
     public void saveFileAs(File file) {
@@ -146,47 +211,60 @@ public class SaveLoadManager {
     public void load(File file, LineNumberedScrollableTextArea textArea) {
         mainFrame.setTitle(Main.INIT_FRAME_TITLE + " - " + file.getName());
 
+        File audioFile = loadProject(file);
+        textArea.setText(getProp("text")); // Update to text area.
+
+        // Audio.
+        if (!audioFile.exists()) {
+            // Pop up a message.
+            JOptionPane.showMessageDialog(
+                    mainFrame,
+                    "Audio file missing(probably moved or deleted), please redirect it.",
+                    "Report",
+                    JOptionPane.WARNING_MESSAGE
+            );
+
+            JFileChooser fcr = new JFileChooser(".");
+            fcr.setDialogTitle("Please redirect the file: ");
+            fcr.setFileFilter(FileExtensionUtils.AUDIO_EXT_FILTER);
+            if (fcr.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+                audioFile = fcr.getSelectedFile();
+            } else {
+                System.out.println("File chooser not approved. Closing the program now.");
+                System.exit(1);
+            }
+        }
+        setLoadedAudio(audioFile);
+
+        System.out.println("Loaded project: " + file);
+    }
+
+    /**
+     * Load the properties and the marks of a project file, without touching the GUI. This is all a headless export
+     * needs, so a manager created with a null main frame can call it.
+     *
+     * @return The audio file of the project, resolved against the folder of the project file. It may not exist. The
+     * audio property is left as it is in the file.
+     */
+    public File loadProject(File file) {
         try (InputStreamReader inputStreamReader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
             // Load the properties file.
             props.load(inputStreamReader);
-
-            textArea.setText(getProp("text")); // Update to text area.
-
-            // Marks.
-            marks.clear();
-            String marksProp = getProp("marks");
-            if (!marksProp.isEmpty()) {
-                String[] marksStrings = getProp("marks").split(",");
-                for (String string : marksStrings)
-                    marks.add(Integer.valueOf(string));
-            }
-
-            // Audio.
-            File audioFile = new File(file.getParent(), getProp("audio"));
-            if (!audioFile.exists()) {
-                // Pop up a message.
-                JOptionPane.showMessageDialog(
-                        mainFrame,
-                        "Audio file missing(probably moved or deleted), please redirect it.",
-                        "Report",
-                        JOptionPane.WARNING_MESSAGE
-                );
-
-                JFileChooser fcr = new JFileChooser(".");
-                fcr.setDialogTitle("Please redirect the file: ");
-                fcr.setFileFilter(FileExtensionUtils.AUDIO_EXT_FILTER);
-                if (fcr.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
-                    audioFile = fcr.getSelectedFile();
-                } else {
-                    System.out.println("File chooser not approved. Closing the program now.");
-                    System.exit(1);
-                }
-            }
-            setLoadedAudio(audioFile);
+            propsVersion++;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        renderSettingsChanged();
 
-        System.out.println("Loaded project: " + file);
+        // Marks.
+        marks.clear();
+        String marksProp = getProp("marks");
+        if (!marksProp.isEmpty()) {
+            String[] marksStrings = getProp("marks").split(",");
+            for (String string : marksStrings)
+                marks.add(Integer.valueOf(string));
+        }
+
+        return new File(file.getParent(), getProp("audio"));
     }
 }
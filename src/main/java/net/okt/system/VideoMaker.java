@@ -1,41 +1,139 @@
 package net.okt.system;
 
-import net.okt.gui.ProgressBarDialog;
-import net.okt.gui.Viewport;
+import net.okt.system.export.AudioWriter;
+import net.okt.system.export.BackgroundVideo;
+import net.okt.system.export.DraftMode;
+import net.okt.system.export.EncoderProfile;
+import net.okt.system.export.ExportManifest;
+import net.okt.system.export.ExportProgress;
+import net.okt.system.export.FrameBuffer;
+import net.okt.system.export.FrameBufferPool;
+import net.okt.system.export.FrameReorderBuffer;
+import net.okt.system.export.PacketMuxer;
+import net.okt.system.export.RawVideoWriter;
+import net.okt.system.export.SegmentPlanner;
+import net.okt.system.render.FrameState;
+import net.okt.system.render.KaraokeRenderer;
+import net.okt.system.render.ProjectSnapshot;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVStream;
 import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.ffmpeg.global.avutil;
 import org.bytedeco.javacv.*;
 
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class VideoMaker extends Thread {
     public static final Map<String, Integer> CODEC_MAP = getCodecMap();
-    private static final Java2DFrameConverter FRAME_CONVERTER = new Java2DFrameConverter();
+    /**
+     * The format of a folder of PNG images, one for every frame, which keep the alpha of the frames.
+     */
+    public static final String IMAGE_SEQUENCE_FORMAT = "png-sequence";
+    /**
+     * The length (ms) of video between the checkpoints of a resumable export.
+     */
+    private static final int CHECKPOINT_LENGTH = 60000;
+    /**
+     * The number of frames in a row a worker of an image sequence writes, so it only redraws what changed between
+     * them.
+     */
+    private static final int IMAGE_SEQUENCE_CHUNK = 32;
+    /**
+     * The default of {@link #setMemoryLimit(long)}: 1 GiB, which is 64 frame buffers at 1080p, or 16 at 4K,
+     * before the images of the render threads are taken out.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 1L << 30;
 
     private final AtomicBoolean shouldRun = new AtomicBoolean(true);
     private final String filename, format, codec;
     private final int fps, bitrate, width, height;
     private final int timeLength;
-    private final Viewport viewport;
-    private final SaveLoadManager saveLoadManager;
-    private final ProgressBarDialog progressBarDialog;
+    private final int renderThreads;
+    private final int segments;
+    private final boolean resumable;
+    private final EncoderProfile profile;
+    private final BackgroundVideo.Source background;
+    private final DraftMode draft;
+    /**
+     * The format of the uncompressed stream to write instead of a video, or null.
+     */
+    private final RawVideoWriter.Format rawFormat;
+    private final ProjectSnapshot snapshot;
+    private final ExportProgress progress;
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
 
+    /**
+     * @param format        The container format, {@link #IMAGE_SEQUENCE_FORMAT} to write the frames to a folder of
+     *                      images, or a {@link RawVideoWriter.Format} to stream the frames to a file or a named pipe.
+     *                      The last two have no audio, and don't use the codec, the bitrate, the profile and the
+     *                      segments.
+     * @param renderThreads The number of threads that render frames concurrently. The frames are still recorded in
+     *                      order, so the output is the same as rendering on a single thread.
+     * @param segments      The maximum number of segments to encode concurrently. The segments are cut at the gaps
+     *                      between paragraphs and concatenated without re-encoding, so this helps slow codecs that
+     *                      don't use all the cores. 1 to encode the whole video in one go.
+     * @param resumable     If the export is saved in checkpointed segments. When it's stopped, the complete segments
+     *                      are kept, and the next export of the same project and settings to the same file continues
+     *                      from them. The segments are also kept after the export is finished, so the next export of
+     *                      the same settings to the same file only encodes the segments the project has changed in.
+     * @param profile       The encoder settings. The bitrate is only used if the profile doesn't set a constant
+     *                      quality.
+     * @param background    The video to composite the lyrics over, or null to render on the background color of the
+     *                      project.
+     * @param draft         The draft settings to export a quick preview with, or null to export normally. The fps, the
+     *                      size and the bitrate given are then scaled down by the draft.
+     * @throws IllegalArgumentException If a background is given for an image sequence, which keeps the alpha to be
+     *                                  composited later instead.
+     */
     public VideoMaker(String filename, String format, String codec, int fps, int bitrate, int timeLength, int width,
-                      int height, Viewport viewport, SaveLoadManager saveLoadManager, ProgressBarDialog progressBarDialog) {
+                      int height, int renderThreads, int segments, boolean resumable, EncoderProfile profile,
+                      BackgroundVideo.Source background, DraftMode draft, ProjectSnapshot snapshot,
+                      ExportProgress progress) {
         this.filename = filename;
         this.format = format;
         this.codec = codec;
-        this.fps = fps;
-        this.bitrate = bitrate;
         this.timeLength = timeLength;
-        this.width = width;
-        this.height = height;
-        this.viewport = viewport;
-        this.saveLoadManager = saveLoadManager;
-        this.progressBarDialog = progressBarDialog;
+        this.renderThreads = Math.max(1, renderThreads);
+        this.segments = Math.max(1, segments);
+        this.resumable = resumable;
+        this.profile = profile;
+        this.background = background;
+        this.draft = draft;
+        this.progress = progress;
+        this.rawFormat = RawVideoWriter.Format.of(format);
+        if (background != null && format.equals(IMAGE_SEQUENCE_FORMAT))
+            throw new IllegalArgumentException("An image sequence can't have a background video.");
+
+        if (draft == null) {
+            this.fps = fps;
+            this.bitrate = bitrate;
+            this.width = width;
+            this.height = height;
+        } else {
+            this.fps = Math.min(fps, draft.fps());
+            this.bitrate = draft.scaleBitrate(bitrate);
+            this.width = draft.scale(width);
+            this.height = draft.scale(height);
+            snapshot = draft.apply(snapshot);
+        }
+        // The lyrics are rendered to a transparent layer to composite over the background.
+        if (background != null)
+            snapshot = snapshot.withProps(Map.of("backgroundColor", "0"));
+        this.snapshot = snapshot;
     }
 
     private static Map<String, Integer> getCodecMap() {
@@ -49,6 +147,19 @@ public class VideoMaker extends Thread {
         return map;
     }
 
+    /**
+     * Set the memory for the frames in flight between the render workers and the encoder. It decides the number of
+     * frame buffers, which are allocated up front and reused, so the memory doesn't grow with the length or the fps of
+     * the video. Fewer buffers than twice the render threads keep some of the threads waiting. The images every render
+     * thread draws with, and a background video, are taken out of the limit before the buffers. Segments encoded at
+     * the same time share the limit. Call it before {@link #start()}.
+     *
+     * @param bytes The limit. At least 3 buffers are used even if they take more.
+     */
+    public void setMemoryLimit(long bytes) {
+        this.memoryLimit = bytes;
+    }
+
     public void stopProcessing() {
         shouldRun.set(false);
         System.out.println("Output is stopped.");
@@ -59,20 +170,379 @@ public class VideoMaker extends Thread {
         int totalFrames = (int) (fps * timeLength * 0.001f);
         float frameLength = 1000f / fps;
 
-        progressBarDialog.progressBar.setMinimum(0);
-        progressBarDialog.progressBar.setMaximum(totalFrames);
+        progress.setTotal(totalFrames);
+        progress.watchOutput(new File(filename));
 
-        FFmpegFrameGrabber audioGrabber = new FFmpegFrameGrabber(saveLoadManager.getProp("audio"));
+        if (rawFormat != null || format.equals(IMAGE_SEQUENCE_FORMAT)) {
+            writeFrames(totalFrames, frameLength);
+            return;
+        }
+
+        FFmpegFrameGrabber audioGrabber = new FFmpegFrameGrabber(snapshot.getProp("audio"));
         try {
             audioGrabber.start();
         } catch (FFmpegFrameGrabber.Exception e) {
+            progress.fail("Failed to open the audio: " + e.getMessage());
             throw new RuntimeException(e);
         }
-        int audioChannels = audioGrabber.getAudioChannels();
-
-        FFmpegFrameRecorder frameRecorder = new FFmpegFrameRecorder(filename, width, height, audioChannels);
         FFmpegLogCallback.set();
 
+        // A resumable export is cut to checkpoints even if the segments are encoded one by one. Where no paragraph gap
+        // is near a checkpoint, it's cut between any frames, so a stopped export never loses much more than one.
+        int maxSegments = resumable ? Math.max(segments, (int) Math.ceil((double) timeLength / CHECKPOINT_LENGTH)) :
+                segments;
+        List<Integer> gapTimes = SegmentPlanner.getParagraphGapTimes(snapshot);
+        int[] segmentStarts = maxSegments > 1 ?
+                SegmentPlanner.planSegments(gapTimes, totalFrames, frameLength, maxSegments, resumable) : new int[]{0};
+
+        try {
+            boolean isFinished;
+            if (resumable || segmentStarts.length > 1) {
+                isFinished = recordSegmented(audioGrabber, segmentStarts, totalFrames, frameLength);
+            } else {
+                isFinished = recordSingle(audioGrabber, totalFrames, frameLength);
+            }
+            audioGrabber.close();
+
+            // If stop processing, deleted the file and return.
+            if (!isFinished) {
+                deleteFile(filename);
+                progress.stop("Output is stopped.");
+                return;
+            }
+
+            String finishMsg = "Video outputted to: " + filename;
+            System.out.println(finishMsg);
+            progress.finish(finishMsg);
+        } catch (FrameRecorder.Exception | FrameGrabber.Exception | RuntimeException e) {
+            progress.fail("Export failed: " + e.getMessage());
+            throw e instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write the frames as images or a raw stream instead of encoding them.
+     */
+    private void writeFrames(int totalFrames, float frameLength) {
+        try {
+            boolean isFinished = rawFormat != null ? writeRawStream(totalFrames, frameLength) :
+                    writeImageSequence(totalFrames, frameLength);
+
+            // The frames written are kept, the reader of a stream may have taken them already.
+            if (!isFinished) {
+                progress.stop("Output is stopped.");
+                return;
+            }
+
+            String finishMsg = "Frames outputted to: " + filename;
+            System.out.println(finishMsg);
+            progress.finish(finishMsg);
+        } catch (IOException | RuntimeException e) {
+            progress.fail("Export failed: " + e.getMessage());
+            throw e instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stream the frames in order to the file. They are rendered by the same workers as a video, and written as soon as
+     * they are ready.
+     *
+     * @return false if the processing is stopped.
+     */
+    private boolean writeRawStream(int totalFrames, float frameLength) throws IOException {
+        try (RawVideoWriter writer = new RawVideoWriter(filename, rawFormat, width, height, fps)) {
+            return recordVideo(buffer -> {
+                try {
+                    writer.write(buffer.getPixels());
+                } catch (IOException e) {
+                    throw new FrameRecorder.Exception("Failed to write the frames.", e);
+                }
+            }, 0, totalFrames, frameLength, renderThreads, memoryLimit, null);
+        }
+    }
+
+    /**
+     * Write every frame to a PNG image in the output folder. Nothing has to be in order, so every worker renders and
+     * compresses its own chunks of frames, and the compression is spread over all the threads.
+     *
+     * @return false if the processing is stopped.
+     */
+    private boolean writeImageSequence(int totalFrames, float frameLength) throws IOException {
+        File folder = new File(filename);
+        if (!folder.isDirectory() && !folder.mkdirs())
+            throw new IOException("Failed to create the folder: " + folder.getAbsolutePath());
+
+        KaraokeRenderer renderer = new KaraokeRenderer(snapshot, draft != null && draft.fastRendering());
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[renderThreads];
+        for (int i = 0; i < renderThreads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    writeImageChunks(folder, renderer, totalFrames, frameLength, nextChunk);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    shouldRun.set(false); // stop the other workers.
+                }
+            }, "VideoMaker-image-" + i);
+            workers[i].start();
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                shouldRun.set(false);
+            }
+        }
+
+        if (failure.get() != null)
+            throw new IOException("Failed to write the images.", failure.get());
+        return shouldRun.get();
+    }
+
+    /**
+     * Keep taking the next chunk of frames and write them to images. The image of the worker keeps the last frame, so
+     * only the regions that changed are redrawn, and a frame the same as the one before it is copied from its file.
+     */
+    private void writeImageChunks(File folder, KaraokeRenderer renderer, int totalFrames, float frameLength,
+                                  AtomicInteger nextChunk) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        FrameState imageState = null;
+
+        int startFrame;
+        while ((startFrame = nextChunk.getAndIncrement() * IMAGE_SEQUENCE_CHUNK) < totalFrames && shouldRun.get()) {
+            int endFrame = Math.min(startFrame + IMAGE_SEQUENCE_CHUNK, totalFrames);
+            File lastFile = null;
+            for (int i = startFrame; i < endFrame && shouldRun.get(); i++) {
+                FrameState state = renderer.getFrameState((int) (i * frameLength));
+                File file = new File(folder, String.format("frame_%06d.png", i));
+
+                if (lastFile != null && state.equals(imageState)) {
+                    Files.copy(lastFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    renderer.render(state, imageState, image);
+                    imageState = state;
+                    ImageIO.write(image, "png", file);
+                }
+                lastFile = file;
+
+                progress.frameRendered();
+                progress.frameRecorded();
+            }
+        }
+    }
+
+    /**
+     * Record the whole video and the audio with a single recorder.
+     *
+     * @return false if the processing is stopped.
+     */
+    private boolean recordSingle(FFmpegFrameGrabber audioGrabber, int totalFrames, float frameLength)
+            throws FrameRecorder.Exception, FrameGrabber.Exception {
+        FFmpegFrameRecorder frameRecorder = createRecorder(filename, audioGrabber);
+        boolean copyAudio = AudioWriter.canCopy(audioGrabber, format);
+        if (copyAudio) {
+            // The recorder copies the audio stream settings from the source instead of opening an audio encoder.
+            frameRecorder.start(audioGrabber.getFormatContext());
+        } else {
+            frameRecorder.start();
+        }
+
+        // Record the video and the audio together.
+        AudioWriter audioWriter = new AudioWriter(frameRecorder, audioGrabber, copyAudio, timeLength);
+        boolean isFinished = recordVideo(buffer -> frameRecorder.record(buffer.getFrame(), avutil.AV_PIX_FMT_ARGB), 0,
+                totalFrames, frameLength, renderThreads, memoryLimit, audioWriter);
+        if (isFinished)
+            audioWriter.finish();
+
+        frameRecorder.close();
+        return isFinished;
+    }
+
+    /**
+     * Encode the segments to their own video-only files, at most {@link #segments} at the same time, then concatenate
+     * them losslessly into the output file and add the audio to it. The segments are kept track of by an
+     * {@link ExportManifest}, so the complete ones of an earlier run of the same export are skipped.
+     *
+     * @param segmentStarts The start frames of the segments. See {@link SegmentPlanner#planSegments}.
+     * @return false if the processing is stopped.
+     */
+    private boolean recordSegmented(FFmpegFrameGrabber audioGrabber, int[] segmentStarts, int totalFrames,
+                                    float frameLength) throws FrameRecorder.Exception, FrameGrabber.Exception {
+        ExportManifest manifest;
+        try {
+            manifest = ExportManifest.loadOrCreate(new File(filename + ".parts"), getExportKey(), format,
+                    segmentStarts, totalFrames);
+        } catch (IOException e) {
+            throw new FrameRecorder.Exception("Failed to create the export manifest.", e);
+        }
+        int segmentCount = manifest.getSegmentCount();
+        System.out.println("Encoding in " + segmentCount + " segments.");
+
+        // The complete segments of an earlier export are only reused if their frames are still the same.
+        String[] fingerprints = SegmentPlanner.getContentFingerprints(snapshot, manifest.getSegmentStarts(),
+                totalFrames, frameLength);
+        try {
+            int changedSegments = manifest.updateFingerprints(fingerprints);
+            if (changedSegments > 0)
+                System.out.println(changedSegments + " segments have changed since the last export.");
+        } catch (IOException e) {
+            throw new FrameRecorder.Exception("Failed to update the export manifest.", e);
+        }
+        progress.watchOutput(new File(filename + ".parts"));
+        progress.addSkippedFrames(manifest.getCompleteFrames());
+
+        // Share the render threads between the segments encoded at the same time.
+        int encoders = Math.min(segments, segmentCount - manifest.getCompleteSegments());
+        int segmentRenderThreads = Math.max(1, renderThreads / Math.max(1, encoders));
+        AtomicInteger nextSegment = new AtomicInteger();
+        AtomicBoolean isFailed = new AtomicBoolean();
+
+        Thread[] encoderThreads = new Thread[encoders];
+        for (int i = 0; i < encoders; i++) {
+            encoderThreads[i] = new Thread(() -> {
+                try {
+                    int segment;
+                    while ((segment = nextSegment.getAndIncrement()) < segmentCount && shouldRun.get()) {
+                        if (manifest.isComplete(segment)) continue;
+
+                        // Every segment has its own encoder, so it starts with a keyframe.
+                        String segmentFile = manifest.getSegmentFile(segment).getPath();
+                        boolean isComplete;
+                        try (FFmpegFrameRecorder segmentRecorder = createRecorder(segmentFile, null)) {
+                            segmentRecorder.start();
+                            isComplete = recordVideo(
+                                    buffer -> segmentRecorder.record(buffer.getFrame(), avutil.AV_PIX_FMT_ARGB),
+                                    manifest.getStartFrame(segment), manifest.getEndFrame(segment), frameLength,
+                                    segmentRenderThreads, memoryLimit / encoders, null);
+                        }
+
+                        if (isComplete)
+                            manifest.markComplete(segment);
+                    }
+                } catch (Exception e) {
+                    isFailed.set(true);
+                    shouldRun.set(false); // stop the other segments.
+                    e.printStackTrace();
+                }
+            }, "VideoMaker-segment-encoder-" + i);
+            encoderThreads[i].start();
+        }
+
+        for (Thread encoderThread : encoderThreads) {
+            try {
+                encoderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                shouldRun.set(false);
+            }
+        }
+
+        boolean isFinished = shouldRun.get();
+        if (isFinished) {
+            File[] segmentFiles = new File[segmentCount];
+            for (int i = 0; i < segmentCount; i++)
+                segmentFiles[i] = manifest.getSegmentFile(i);
+            concatSegments(segmentFiles, audioGrabber);
+            // Keep the segments of a resumable export, for the next export after an edit.
+            if (!resumable)
+                manifest.delete();
+        } else if (resumable) {
+            // Keep the complete segments for the next run.
+            manifest.deleteIncompleteSegments();
+            System.out.println("Export can be resumed: " + manifest.getCompleteSegments() + "/" + segmentCount +
+                    " segments complete.");
+        } else {
+            manifest.delete();
+        }
+
+        if (isFailed.get())
+            throw new FrameRecorder.Exception("Failed to encode a segment.");
+
+        return isFinished;
+    }
+
+    /**
+     * @return A key of all the settings that affect the encoded video, so a manifest of other settings is never
+     * resumed. The project is not in it, the segments it has changed in are told by their fingerprints.
+     */
+    private String getExportKey() {
+        return String.join(",", format, codec, String.valueOf(fps), String.valueOf(bitrate),
+                String.valueOf(timeLength), String.valueOf(width), String.valueOf(height), profile.toOptions(),
+                String.valueOf(background), String.valueOf(draft));
+    }
+
+    /**
+     * Concatenate the segment files to the output file without re-encoding them, using the ffmpeg concat demuxer, and
+     * record the audio to it. The audio is copied when its codec is valid in the format, like in a single recording.
+     */
+    private void concatSegments(File[] segmentFiles, FFmpegFrameGrabber audioGrabber)
+            throws FrameRecorder.Exception, FrameGrabber.Exception {
+        File listFile = new File(filename + ".segments.txt");
+        try (PrintWriter writer = new PrintWriter(listFile, StandardCharsets.UTF_8)) {
+            writer.println("ffconcat version 1.0");
+            for (File segmentFile : segmentFiles)
+                writer.println("file '" + segmentFile.getAbsolutePath().replace("'", "'\\''") + "'");
+        } catch (IOException e) {
+            throw new FrameRecorder.Exception("Failed to write the segment list.", e);
+        }
+
+        FFmpegFrameGrabber segmentsGrabber = new FFmpegFrameGrabber(listFile.getPath());
+        segmentsGrabber.setFormat("concat");
+        segmentsGrabber.setOption("safe", "0"); // allow absolute paths.
+        segmentsGrabber.start();
+
+        AVStream videoStream = segmentsGrabber.getFormatContext().streams(segmentsGrabber.getVideoStream());
+        double timeBase = avutil.av_q2d(videoStream.time_base());
+
+        // The video stream is copied from the segments. A recorder can only copy the streams of one input, so to copy
+        // the audio too, both are muxed from their own inputs. Otherwise the recorder encodes the audio.
+        PacketMuxer muxer = null;
+        FFmpegFrameRecorder frameRecorder = null;
+        AudioWriter audioWriter;
+        if (AudioWriter.canCopy(audioGrabber, format)) {
+            AVStream audioStream = audioGrabber.getFormatContext().streams(audioGrabber.getAudioStream());
+            muxer = new PacketMuxer(filename, format, videoStream, audioStream);
+            audioWriter = new AudioWriter(muxer, 1, audioGrabber, timeLength);
+        } else {
+            frameRecorder = createRecorder(filename, audioGrabber);
+            frameRecorder.start(segmentsGrabber.getFormatContext());
+            audioWriter = new AudioWriter(frameRecorder, audioGrabber, false, timeLength);
+        }
+
+        try {
+            AVPacket packet;
+            while ((packet = segmentsGrabber.grabPacket()) != null) {
+                // Write the audio up to this packet first, so they are interleaved.
+                audioWriter.writeUntil((long) (packet.dts() * timeBase * 1000));
+                if (muxer != null)
+                    muxer.write(packet, 0);
+                else
+                    frameRecorder.recordPacket(packet);
+            }
+            audioWriter.finish();
+        } finally {
+            if (muxer != null)
+                muxer.close();
+            else
+                frameRecorder.close();
+        }
+
+        segmentsGrabber.close();
+        deleteFile(listFile.getPath());
+    }
+
+    /**
+     * Create a recorder with the video settings of this maker.
+     *
+     * @param audioGrabber The grabber to take the audio settings from. Null for a video-only recorder.
+     */
+    private FFmpegFrameRecorder createRecorder(String file, FFmpegFrameGrabber audioGrabber) {
+        int audioChannels = audioGrabber == null ? 0 : audioGrabber.getAudioChannels();
+        FFmpegFrameRecorder frameRecorder = new FFmpegFrameRecorder(file, width, height, audioChannels);
+
         // Video
         int codecID = CODEC_MAP.get(codec);
         frameRecorder.setVideoCodec(codecID);
@@ -81,62 +551,243 @@ public class VideoMaker extends Thread {
         frameRecorder.setVideoBitrate(bitrate);
         if (codecID == avcodec.AV_CODEC_ID_PNG)
             frameRecorder.setPixelFormat(avutil.AV_PIX_FMT_RGBA);
+        profile.apply(frameRecorder, codecID, fps);
+        // The draft preset goes over the one of the profile.
+        if (draft != null)
+            setFastestPreset(frameRecorder, codecID);
 
         // Audio
-        frameRecorder.setAudioCodec(audioGrabber.getAudioCodec());
-        frameRecorder.setSampleFormat(avutil.AV_SAMPLE_FMT_FLTP); // This is the only supported sample format.
-        frameRecorder.setSampleRate(audioGrabber.getSampleRate());
+        if (audioGrabber != null) {
+            frameRecorder.setAudioCodec(audioGrabber.getAudioCodec());
+            frameRecorder.setSampleFormat(avutil.AV_SAMPLE_FMT_FLTP); // This is the only supported sample format.
+            frameRecorder.setSampleRate(audioGrabber.getSampleRate());
+        }
+
+        return frameRecorder;
+    }
+
+    /**
+     * Set the options that make the encoder of the codec run as fast as it can, at the cost of the quality.
+     */
+    private static void setFastestPreset(FFmpegFrameRecorder frameRecorder, int codecID) {
+        if (codecID == avcodec.AV_CODEC_ID_H264 || codecID == avcodec.AV_CODEC_ID_HEVC) {
+            frameRecorder.setVideoOption("preset", "ultrafast");
+        } else if (codecID == avcodec.AV_CODEC_ID_VP9) {
+            frameRecorder.setVideoOption("deadline", "realtime");
+            frameRecorder.setVideoOption("cpu-used", "8");
+        } else if (codecID == avcodec.AV_CODEC_ID_AV1) {
+            frameRecorder.setVideoOption("cpu-used", "8");
+        }
+    }
+
+    /**
+     * Render the frames in [startFrame, endFrame) on worker threads and write them to the sink in frame order on this
+     * thread.
+     * With a background video, it's decoded on another thread, and the rendered lyrics are composited over it here
+     * before recording.
+     *
+     * @param renderThreads The number of worker threads.
+     * @param memoryLimit   The memory for the frame buffers of this range. See {@link #setMemoryLimit(long)}.
+     * @param audioWriter   The audio to interleave with the frames. Null to record the video only.
+     * @return false if the processing is stopped before all the frames are recorded.
+     */
+    private boolean recordVideo(FrameSink sink, int startFrame, int endFrame, float frameLength,
+                                int renderThreads, long memoryLimit, AudioWriter audioWriter)
+            throws FrameRecorder.Exception, FrameGrabber.Exception {
+        // The renderer doesn't hold per-frame state, so all the workers can share it.
+        KaraokeRenderer renderer = new KaraokeRenderer(snapshot, draft != null && draft.fastRendering());
 
-        // Recording frames.
+        // The images the workers draw with, and the frames of a background and the composited frame come out of the
+        // limit first.
+        memoryLimit -= renderer.getMemoryUsage(width, height, renderThreads);
+        if (background != null)
+            memoryLimit -= BackgroundVideo.getMemoryUsage(width, height) + FrameBufferPool.getBufferBytes(width, height);
+
+        // Every frame in the reorder window holds a buffer, plus the one being recorded and the last recorded one,
+        // which is kept for repeated frames. The workers wait when the window is full, and it only moves on when the
+        // encoder takes a frame.
+        int poolSize = FrameBufferPool.getSize(memoryLimit, width, height, 3, renderThreads * 2 + 2);
+        FrameReorderBuffer<RenderedFrame> reorderBuffer = new FrameReorderBuffer<>(poolSize - 2);
+        FrameBufferPool bufferPool = new FrameBufferPool(poolSize, width, height);
+        // More workers than the window would only wait for it.
+        renderThreads = Math.min(renderThreads, reorderBuffer.getCapacity());
+        System.out.println("Frame pool: " + poolSize + " buffers of " +
+                FrameBufferPool.getBufferBytes(width, height) / (1 << 20) + " MB, " + renderThreads + " render threads.");
+
+        FrameDispenser frameDispenser = new FrameDispenser(renderer, startFrame, endFrame, frameLength);
+        Thread[] workers = new Thread[renderThreads];
+        for (int i = 0; i < renderThreads; i++) {
+            workers[i] = getRenderWorker(i, renderer, startFrame, frameDispenser, reorderBuffer, bufferPool);
+            workers[i].start();
+        }
+
+        BackgroundVideo backgroundVideo = null;
+        FrameBuffer compositeBuffer = null;
+        if (background != null) {
+            backgroundVideo = new BackgroundVideo(background, width, height, startFrame, endFrame, frameLength);
+            compositeBuffer = new FrameBuffer(width, height);
+        }
+
+        int repeatedFrames = 0;
+        FrameBuffer lastBuffer = null;
         try {
-            frameRecorder.start();
+            for (int i = startFrame; i < endFrame; i++) {
+                if (!shouldRun.get()) return false;
 
-            // Record video.
-            for (int i = 0; i < totalFrames; i++) {
-                // if stop processing, deleted the file and return.
-                if (!shouldRun.get()) {
-                    audioGrabber.close();
-                    frameRecorder.close();
-                    deleteFile();
-                    return;
+                RenderedFrame renderedFrame = reorderBuffer.take();
+                if (renderedFrame.buffer == null) {
+                    // Same as the last frame. Record the last buffer again.
+                    repeatedFrames++;
+                } else {
+                    if (lastBuffer != null)
+                        bufferPool.release(lastBuffer);
+                    lastBuffer = renderedFrame.buffer;
                 }
 
-                int time = (int) (i * frameLength);
-                viewport.drawToBufImg(time);
-
-                Frame frame = FRAME_CONVERTER.getFrame(viewport.getBufferedImage());
-                frameRecorder.record(frame, avutil.AV_PIX_FMT_ARGB);  // video
+                FrameBuffer outputBuffer = lastBuffer;
+                if (backgroundVideo != null) {
+                    // The background changes every frame, even if the lyrics don't.
+                    int[] backgroundPixels = backgroundVideo.take();
+                    compositeBuffer.composite(backgroundPixels, lastBuffer);
+                    backgroundVideo.release(backgroundPixels);
+                    outputBuffer = compositeBuffer;
+                }
+                sink.write(outputBuffer);  // video
+                // The audio that starts before the next frame.
+                if (audioWriter != null)
+                    audioWriter.writeUntil((int) ((i + 1) * frameLength));
 
-                progressBarDialog.progressBar.setValue(i);
-                progressBarDialog.progressBar.setString("frames: " + i + "/" + totalFrames);
+                progress.frameRecorded();
+            }
+            System.out.println("Repeated static frames: " + repeatedFrames + "/" + (endFrame - startFrame));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            reorderBuffer.close();
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            bufferPool.close();
+            if (backgroundVideo != null) {
+                backgroundVideo.close();
+                compositeBuffer.close();
             }
+        }
+
+        return true;
+    }
+
+    /**
+     * Create a worker that keeps taking the next frame, renders it to a free frame buffer, and puts the buffer to the
+     * reorder buffer. If the frame has the same {@link FrameState} as the frame before it, it is not rendered at all,
+     * and {@link RenderedFrame#REPEAT} is put instead.
+     */
+    private Thread getRenderWorker(int workerIndex, KaraokeRenderer renderer, int startFrame,
+                                   FrameDispenser frameDispenser, FrameReorderBuffer<RenderedFrame> reorderBuffer,
+                                   FrameBufferPool bufferPool) {
+        Thread worker = new Thread(() -> {
+            try {
+                FrameDispenser.Frame frame;
+                while (shouldRun.get() && (frame = frameDispenser.next()) != null) {
+                    // The reorder buffer counts from the first frame of the range.
+                    int index = frame.index() - startFrame;
+                    if (!reorderBuffer.awaitSlot(index)) return;
 
-            // Record audio.
-            Frame audioFrame;
-            while ((audioFrame = audioGrabber.grabFrame()) != null) {
-                // Because audio and recorder have a different frame rate, we need to correct the time stamp.
-                frameRecorder.setTimestamp(audioFrame.timestamp);
-                frameRecorder.record(audioFrame);
+                    FrameState state = frame.state();
 
-                // We break if we have recorded the needed length of time.
-                if (audioFrame.timestamp * 0.001f > timeLength) break;
+                    // Frames in instrumental breaks and highlight holds are all the same, skip rendering them.
+                    if (frame.isRepeat()) {
+                        reorderBuffer.put(index, RenderedFrame.REPEAT);
+                        progress.frameRendered();
+                        continue;
+                    }
 
-                // The audio recording is fast, so no need to print the progress.
+                    // The buffer still holds an earlier frame, so only the regions that changed since are redrawn.
+                    FrameBuffer buffer = bufferPool.acquire();
+                    List<Rectangle> dirtyRegions = renderer.render(state, buffer.getState(), buffer.getImage());
+                    buffer.setState(state);
+                    // A layer over a background is composited by the encoder instead, and a raw stream is written
+                    // from the image.
+                    if (background == null && rawFormat == null)
+                        buffer.publish(dirtyRegions);
+                    reorderBuffer.put(index, new RenderedFrame(buffer));
+                    progress.frameRendered();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                reorderBuffer.fail(t);
             }
+        }, "VideoMaker-render-" + workerIndex);
+        worker.setDaemon(true);
 
-            audioGrabber.close();
-            frameRecorder.close();
+        return worker;
+    }
 
-            String finishMsg = "Video outputted to: " + filename;
-            System.out.println(finishMsg);
-            progressBarDialog.showFinish(finishMsg);
-        } catch (FrameRecorder.Exception | FrameGrabber.Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Where {@link #recordVideo} writes the frames to, in order.
+     */
+    private interface FrameSink {
+        void write(FrameBuffer buffer) throws FrameRecorder.Exception;
+    }
+
+    /**
+     * Hands out the frames of a range to the render workers in order, with their states. Every state is computed once
+     * and compared with the state of the frame before it here, so the workers don't compute the state of the frame
+     * before theirs again.
+     */
+    private static class FrameDispenser {
+        private final KaraokeRenderer renderer;
+        private final int endFrame;
+        private final float frameLength;
+        private int nextFrame;
+        private FrameState lastState;
+
+        FrameDispenser(KaraokeRenderer renderer, int startFrame, int endFrame, float frameLength) {
+            this.renderer = renderer;
+            this.nextFrame = startFrame;
+            this.endFrame = endFrame;
+            this.frameLength = frameLength;
+        }
+
+        /**
+         * @return The next frame, or null if all the frames are handed out.
+         */
+        synchronized Frame next() {
+            if (nextFrame >= endFrame) return null;
+
+            int index = nextFrame++;
+            FrameState state = renderer.getFrameState((int) (index * frameLength));
+            // The first frame of the range is always rendered.
+            boolean isRepeat = state.equals(lastState);
+            lastState = state;
+            return new Frame(index, state, isRepeat);
         }
+
+        /**
+         * @param isRepeat If the frame has the same state as the frame before it.
+         */
+        record Frame(int index, FrameState state, boolean isRepeat) {
+        }
+    }
+
+    /**
+     * A frame handed from a render worker to the encoder.
+     *
+     * @param buffer The rendered buffer, or null if the frame is the same as the last one.
+     */
+    private record RenderedFrame(FrameBuffer buffer) {
+        static final RenderedFrame REPEAT = new RenderedFrame(null);
     }
 
-    private void deleteFile() {
+    private static void deleteFile(String filename) {
         File file = new File(filename);
+        if (!file.exists()) return;
 
         if (file.delete())
             System.out.println("Deleted file: " + file.getAbsolutePath());
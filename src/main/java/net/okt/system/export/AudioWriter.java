@@ -0,0 +1,181 @@
+package net.okt.system.export;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+/**
+ * Writes the audio of a source to a recorder a piece at a time, so the exporter can interleave it with the video
+ * frames in timestamp order. At most one audio frame or packet is grabbed ahead of what's been written, so the memory
+ * use doesn't grow with the export length.
+ * <p>
+ * The audio is either copied as compressed packets, or decoded and encoded again by the recorder. See
+ * {@link #canCopy(FFmpegFrameGrabber, String)}.
+ */
+public class AudioWriter {
+    /**
+     * Where the audio goes: a recorder, or a muxer to copy the packets to.
+     */
+    private final FFmpegFrameRecorder recorder;
+    private final PacketMuxer muxer;
+    /**
+     * The index of the audio stream in the {@link #muxer}.
+     */
+    private final int muxerInput;
+    private final FFmpegFrameGrabber grabber;
+    private final boolean isCopy;
+    private final int timeLength;
+    /**
+     * The seconds per unit of the packet timestamps. Only used when copying.
+     */
+    private final double timeBase;
+
+    private AVPacket pendingPacket;
+    private Frame pendingFrame;
+    private long pendingTime;
+    private boolean isEnded;
+
+    /**
+     * @param isCopy     If the packets are copied. The recorder must then be started with the format context of the
+     *                   grabber.
+     * @param timeLength The length (ms) of the audio to write.
+     */
+    public AudioWriter(FFmpegFrameRecorder recorder, FFmpegFrameGrabber grabber, boolean isCopy, int timeLength) {
+        this(recorder, null, -1, grabber, isCopy, timeLength);
+    }
+
+    /**
+     * Copy the packets to a muxer, for an output that copies its other streams from other inputs.
+     *
+     * @param input      The index of the audio stream in the muxer.
+     * @param timeLength The length (ms) of the audio to write.
+     */
+    public AudioWriter(PacketMuxer muxer, int input, FFmpegFrameGrabber grabber, int timeLength) {
+        this(null, muxer, input, grabber, true, timeLength);
+    }
+
+    private AudioWriter(FFmpegFrameRecorder recorder, PacketMuxer muxer, int muxerInput, FFmpegFrameGrabber grabber,
+                        boolean isCopy, int timeLength) {
+        this.recorder = recorder;
+        this.muxer = muxer;
+        this.muxerInput = muxerInput;
+        this.grabber = grabber;
+        this.isCopy = isCopy;
+        this.timeLength = timeLength;
+        this.timeBase = isCopy ?
+                avutil.av_q2d(grabber.getFormatContext().streams(grabber.getAudioStream()).time_base()) : 0;
+    }
+
+    /**
+     * Check if the audio packets of the source can be muxed to the given format as they are. The result is printed to
+     * the export log.
+     *
+     * @return true if the source only has audio, and its codec is supported by the format.
+     */
+    public static boolean canCopy(FFmpegFrameGrabber grabber, String format) {
+        AVFormatContext formatContext = grabber.getFormatContext();
+
+        // The recorder would take any other stream of the source, like the cover picture of an mp3, as the video.
+        boolean isAudioOnly = true;
+        for (int i = 0; i < formatContext.nb_streams(); i++) {
+            if (formatContext.streams(i).codecpar().codec_type() != avutil.AVMEDIA_TYPE_AUDIO)
+                isAudioOnly = false;
+        }
+        boolean isSupported = avformat.avformat_query_codec(avformat.av_guess_format(format, null, null),
+                grabber.getAudioCodec(), avformat.FF_COMPLIANCE_NORMAL) == 1;
+
+        if (isAudioOnly && isSupported) {
+            System.out.println("Audio: copying the " + grabber.getAudioCodecName() + " stream.");
+            return true;
+        }
+
+        String reason = isAudioOnly ? grabber.getAudioCodecName() + " is not supported by " + format :
+                "the source has non-audio streams";
+        System.out.println("Audio: transcoding, because " + reason + ".");
+        return false;
+    }
+
+    /**
+     * Write all the audio that starts before the given time.
+     *
+     * @param time The time (ms).
+     */
+    public void writeUntil(long time) throws FrameRecorder.Exception, FrameGrabber.Exception {
+        while (!isEnded) {
+            if (pendingPacket == null && pendingFrame == null && !grabNext()) return;
+            if (pendingTime >= time) return;
+
+            writePending();
+        }
+    }
+
+    /**
+     * Write the rest of the audio.
+     */
+    public void finish() throws FrameRecorder.Exception, FrameGrabber.Exception {
+        writeUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Grab the next audio packet or frame as the pending one.
+     *
+     * @return false if there's no more audio to write.
+     */
+    private boolean grabNext() throws FrameGrabber.Exception {
+        if (isCopy) {
+            AVPacket packet;
+            do {
+                packet = grabber.grabPacket();
+            } while (packet != null && packet.stream_index() != grabber.getAudioStream());
+
+            if (packet != null) {
+                long pts = packet.pts() == avutil.AV_NOPTS_VALUE ? packet.dts() : packet.pts();
+                pendingTime = (long) (pts * timeBase * 1000);
+                // We break if we have recorded the needed length of time.
+                if (pendingTime <= timeLength) {
+                    pendingPacket = packet;
+                    return true;
+                }
+            }
+        } else {
+            Frame frame = grabber.grabSamples();
+            if (frame != null) {
+                pendingFrame = frame;
+                pendingTime = frame.timestamp / 1000;
+                return true;
+            }
+        }
+
+        isEnded = true;
+        return false;
+    }
+
+    private void writePending() throws FrameRecorder.Exception {
+        if (pendingPacket != null) {
+            if (muxer != null)
+                muxer.write(pendingPacket, muxerInput);
+            else
+                recorder.recordPacket(pendingPacket);
+            pendingPacket = null;
+            return;
+        }
+
+        // Because audio and recorder have a different frame rate, we need to correct the time stamp. It's put back
+        // after, so the timestamps of the interleaved video frames aren't changed.
+        int videoFrameNumber = recorder.getFrameNumber();
+        recorder.setTimestamp(pendingFrame.timestamp);
+        recorder.record(pendingFrame);
+        recorder.setFrameNumber(videoFrameNumber);
+
+        // We break if we have recorded the needed length of time.
+        if (pendingFrame.timestamp * 0.001f > timeLength)
+            isEnded = true;
+        pendingFrame = null;
+    }
+}
@@ -0,0 +1,237 @@
+package net.okt.system.export;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a background video on its own thread, one frame for every frame of the export, so the lyrics can be
+ * composited over it in the same pass. The decoded frames wait in a bounded queue, so the decoder never runs more than
+ * a few frames ahead of the encoder.
+ * <p>
+ * The background is scaled to the size of the export. Its frame rate doesn't need to match: every export frame gets the
+ * last background frame at or before its time.
+ */
+public class BackgroundVideo implements AutoCloseable {
+    /**
+     * The number of decoded frames that can wait for the encoder.
+     */
+    private static final int QUEUE_SIZE = 8;
+
+    private final Source source;
+    private final int width, height;
+    private final int startFrame, endFrame;
+    private final float frameLength;
+    private final BlockingQueue<int[]> decodedFrames = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    /**
+     * The pixel arrays the encoder has given back. One more than the queue, for the frame being composited.
+     */
+    private final BlockingQueue<int[]> freeFrames = new ArrayBlockingQueue<>(QUEUE_SIZE + 1);
+    private final Thread decoder;
+
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    private FFmpegFrameGrabber grabber;
+    private long length;
+    /**
+     * The last decoded frame at or before the time of the export frame, and its time (µs).
+     */
+    private int[] currentPixels;
+    private long currentTime;
+    /**
+     * The frame decoded after {@link #currentPixels}, and its time (µs).
+     */
+    private int[] nextPixels;
+    private long nextTime;
+    private boolean isEnded;
+
+    /**
+     * Start decoding the background for the frames in [startFrame, endFrame) of an export.
+     */
+    public BackgroundVideo(Source source, int width, int height, int startFrame, int endFrame, float frameLength) {
+        this.source = source;
+        this.width = width;
+        this.height = height;
+        this.startFrame = startFrame;
+        this.endFrame = endFrame;
+        this.frameLength = frameLength;
+
+        for (int i = 0; i < QUEUE_SIZE + 1; i++)
+            freeFrames.add(new int[width * height]);
+        currentPixels = new int[width * height];
+        nextPixels = new int[width * height];
+
+        decoder = new Thread(this::decode, "BackgroundVideo-decoder");
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    /**
+     * @return The bytes of the pixel arrays a background of the size holds while decoding.
+     */
+    public static long getMemoryUsage(int width, int height) {
+        // The queue, the one being composited, and the current and the next decoded frames.
+        return (QUEUE_SIZE + 3L) * width * height * 4;
+    }
+
+    /**
+     * Take the ARGB pixels of the next export frame, blocking until it's decoded. Give the array back with
+     * {@link #release(int[])} when it's no longer used.
+     *
+     * @throws IllegalStateException If the decoding has failed.
+     */
+    public int[] take() throws InterruptedException {
+        while (true) {
+            int[] pixels = decodedFrames.poll(100, TimeUnit.MILLISECONDS);
+            if (pixels != null) return pixels;
+            if (failure != null) throw new IllegalStateException("Failed to decode the background video.", failure);
+            if (!decoder.isAlive() && decodedFrames.isEmpty())
+                throw new IllegalStateException("The background video has no more frames.");
+        }
+    }
+
+    public void release(int[] pixels) {
+        freeFrames.add(pixels);
+    }
+
+    private void decode() {
+        try {
+            grabber = new FFmpegFrameGrabber(source.file());
+            // Let ffmpeg scale the frames and convert them to the pixel format of the frame buffers.
+            grabber.setImageWidth(width);
+            grabber.setImageHeight(height);
+            grabber.setPixelFormat(avutil.AV_PIX_FMT_ARGB);
+            grabber.start();
+            length = grabber.getLengthInTime();
+
+            seek(toBackgroundTime(startFrame));
+            for (int i = startFrame; i < endFrame && running; i++) {
+                long time = toBackgroundTime(i);
+                // Looped back to the start.
+                if (time < currentTime) seek(time);
+
+                while (!isEnded && nextTime <= time) {
+                    int[] pixels = currentPixels;
+                    currentPixels = nextPixels;
+                    nextPixels = pixels;
+                    currentTime = nextTime;
+                    grabNext();
+                }
+
+                int[] pixels = freeFrames.take();
+                System.arraycopy(currentPixels, 0, pixels, 0, pixels.length);
+                decodedFrames.put(pixels);
+            }
+        } catch (InterruptedException ignored) {
+            // Closed.
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    /**
+     * @return The time (µs) in the background of the export frame.
+     */
+    private long toBackgroundTime(int frame) {
+        long time = (long) (frame * frameLength * 1000);
+        return source.loop() && length > 0 ? time % length : time;
+    }
+
+    /**
+     * Decode from the given time, so {@link #currentPixels} is the frame there. Past the end of the background, the
+     * last frame is kept.
+     */
+    private void seek(long time) throws FrameGrabber.Exception {
+        double frameRate = grabber.getFrameRate();
+        long framePeriod = (long) (frameRate > 0 ? 1_000_000 / frameRate : frameLength * 1000);
+        time = getSeekTime(time, length, framePeriod);
+
+        grabber.setTimestamp(time);
+        isEnded = false;
+        grabNext();
+        if (isEnded)
+            throw new FrameGrabber.Exception("No video frame in the background video at " + time + " µs.");
+
+        int[] pixels = currentPixels;
+        currentPixels = nextPixels;
+        nextPixels = pixels;
+        currentTime = time;
+        grabNext();
+    }
+
+    /**
+     * @param time        The time (µs) in the background.
+     * @param length      The length (µs) of the background, or 0 if it isn't known.
+     * @param framePeriod The time (µs) between two frames of the background.
+     * @return The time to seek to, which is the start of the last frame if the time is past the end.
+     */
+    static long getSeekTime(long time, long length, long framePeriod) {
+        if (length <= 0 || time < length - framePeriod) return time;
+        return Math.max(0, length - framePeriod);
+    }
+
+    /**
+     * Decode the next frame to {@link #nextPixels}. If there isn't one, {@link #isEnded} is set, and the current frame
+     * is kept until the end.
+     */
+    private void grabNext() throws FrameGrabber.Exception {
+        Frame frame = grabber.grabImage();
+        if (frame == null) {
+            isEnded = true;
+            return;
+        }
+        nextTime = grabber.getTimestamp();
+
+        // The frame is reused by the grabber, so copy it out now. The bytes are A, R, G, B, as big endian ints.
+        IntBuffer framePixels = ((ByteBuffer) frame.image[0]).order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        int frameStride = frame.imageStride / 4;
+        if (frameStride == width) {
+            framePixels.get(nextPixels);
+        } else {
+            for (int y = 0; y < height; y++) {
+                framePixels.position(y * frameStride);
+                framePixels.get(nextPixels, y * width, width);
+            }
+        }
+    }
+
+    /**
+     * Stop the decoding and close the video.
+     */
+    @Override
+    public void close() {
+        running = false;
+        decoder.interrupt();
+        try {
+            decoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (grabber != null)
+                grabber.close();
+        } catch (FrameGrabber.Exception e) {
+            System.err.println("Failed to close the background video: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A background video of an export.
+     *
+     * @param file The video file.
+     * @param loop If the video starts over when it ends, for a short clip under a longer song. If not, the last frame
+     *             is kept until the end.
+     */
+    public record Source(String file, boolean loop) {
+    }
+}
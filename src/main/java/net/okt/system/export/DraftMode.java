@@ -0,0 +1,50 @@
+package net.okt.system.export;
+
+import net.okt.system.render.ProjectSnapshot;
+
+import java.util.Map;
+
+/**
+ * The settings of a draft export, a quick preview to check the timing. The video is rendered at a fraction of the
+ * project resolution and a lower fps, with the fastest encoder preset. The project itself is not changed, only the
+ * snapshot of the export.
+ *
+ * @param scale         The fraction of the project resolution, in (0, 1].
+ * @param fps           The fps of the draft.
+ * @param fastRendering If the rendering hints should prefer speed to quality.
+ */
+public record DraftMode(float scale, int fps, boolean fastRendering) {
+    public static final DraftMode DEFAULT = new DraftMode(0.5f, 15, true);
+
+    public DraftMode {
+        if (!(scale > 0 && scale <= 1))
+            throw new IllegalArgumentException("Draft scale must be in (0, 1]: " + scale);
+        if (fps <= 0)
+            throw new IllegalArgumentException("Draft fps must be positive: " + fps);
+    }
+
+    /**
+     * @return The size scaled to the draft. It's kept even, because most codecs can't encode odd sizes.
+     */
+    public int scale(int size) {
+        return Math.max(2, Math.round(size * scale / 2) * 2);
+    }
+
+    /**
+     * @return The bitrate of the draft, scaled with the number of pixels.
+     */
+    public int scaleBitrate(int bitrate) {
+        return Math.max(1, (int) (bitrate * scale * scale));
+    }
+
+    /**
+     * @return A copy of the snapshot at the draft resolution. The sizes in a project are relative to the resolution,
+     * so the frames look the same, only smaller.
+     */
+    public ProjectSnapshot apply(ProjectSnapshot snapshot) {
+        return snapshot.withProps(Map.of(
+                "resolutionX", String.valueOf(scale(snapshot.getPropInt("resolutionX"))),
+                "resolutionY", String.valueOf(scale(snapshot.getPropInt("resolutionY")))
+        ));
+    }
+}
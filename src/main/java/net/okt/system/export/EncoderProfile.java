@@ -0,0 +1,184 @@
+package net.okt.system.export;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A named set of encoder settings. Karaoke frames are mostly flat color with small changing parts, so a constant
+ * quality with {@code tune=animation} and long GOPs encodes them a lot faster and smaller than the encoder defaults.
+ * <p>
+ * The settings are written as options, like {@code preset=medium,crf=20,tune=animation,gop=10}, which is how they are
+ * stored in a project and given on the command line.
+ *
+ * @param preset      The x264/x265 preset, or null for the encoder default.
+ * @param crf         The constant rate factor, or -1 to encode at the bitrate of the export.
+ * @param tune        The x264/x265 tune, or null for none.
+ * @param threads     The number of encoder threads, or 0 to let the encoder decide.
+ * @param gop         The maximum length (seconds) between keyframes, or 0 for the encoder default.
+ * @param pixelFormat The ffmpeg name of the pixel format, like yuv420p, or null for the encoder default.
+ */
+public record EncoderProfile(String name, String preset, int crf, String tune, int threads, int gop,
+                             String pixelFormat) {
+    /**
+     * The property of a project that stores the name of its profile.
+     */
+    public static final String PROP_NAME = "encoderProfile";
+    /**
+     * The property of a project that stores the options of its profile.
+     */
+    public static final String PROP_OPTIONS = "encoderOptions";
+
+    /**
+     * Only sets the bitrate, like the exports before there were profiles.
+     */
+    public static final EncoderProfile DEFAULT = new EncoderProfile("bitrate", null, -1, null, 0, 0, null);
+    public static final List<EncoderProfile> BUILT_IN = List.of(
+            DEFAULT,
+            new EncoderProfile("karaoke", "medium", 20, "animation", 0, 10, "yuv420p"),
+            new EncoderProfile("karaoke-fast", "veryfast", 22, "animation", 0, 10, "yuv420p"),
+            new EncoderProfile("karaoke-small", "slow", 26, "animation", 0, 20, "yuv420p")
+    );
+
+    public EncoderProfile {
+        if (name == null || name.isBlank())
+            throw new IllegalArgumentException("Encoder profile must have a name.");
+        if (crf < -1 || crf > 63)
+            throw new IllegalArgumentException("crf must be in [0, 63]: " + crf);
+        if (threads < 0)
+            throw new IllegalArgumentException("threads can't be negative: " + threads);
+        if (gop < 0)
+            throw new IllegalArgumentException("gop can't be negative: " + gop);
+    }
+
+    /**
+     * @return The built-in profile of the name, ignoring the case, or null if there's no such profile.
+     */
+    public static EncoderProfile getBuiltIn(String name) {
+        for (EncoderProfile profile : BUILT_IN) {
+            if (profile.name.equalsIgnoreCase(name))
+                return profile;
+        }
+        return null;
+    }
+
+    /**
+     * Read the profile stored in a project.
+     *
+     * @param name    The {@link #PROP_NAME} property.
+     * @param options The {@link #PROP_OPTIONS} property.
+     * @return The stored profile, or {@link #DEFAULT} if there isn't one.
+     * @throws IllegalArgumentException If the options are invalid.
+     */
+    public static EncoderProfile fromProps(String name, String options) {
+        if (name == null || name.isBlank()) return DEFAULT;
+        if (options == null) {
+            EncoderProfile builtIn = getBuiltIn(name);
+            return builtIn == null ? DEFAULT : builtIn;
+        }
+
+        return new EncoderProfile(name, null, -1, null, 0, 0, null).withOptions(options);
+    }
+
+    /**
+     * @param options Comma separated {@code key=value} pairs. The keys are preset, crf, tune, threads, gop and pix_fmt.
+     *                An empty value resets the setting to the encoder default.
+     * @return A copy of this profile with the options changed.
+     * @throws IllegalArgumentException If an option is unknown or its value is invalid.
+     */
+    public EncoderProfile withOptions(String options) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String option : options.split(",")) {
+            if (option.isBlank()) continue;
+
+            int equals = option.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("Encoder option must be key=value: " + option);
+            values.put(option.substring(0, equals).strip(), option.substring(equals + 1).strip());
+        }
+
+        String preset = this.preset, tune = this.tune, pixelFormat = this.pixelFormat;
+        int crf = this.crf, threads = this.threads, gop = this.gop;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String val = entry.getValue();
+            switch (entry.getKey()) {
+                case "preset" -> preset = val.isEmpty() ? null : val;
+                case "crf" -> crf = val.isEmpty() ? -1 : parseInt(entry.getKey(), val);
+                case "tune" -> tune = val.isEmpty() ? null : val;
+                case "threads" -> threads = val.isEmpty() ? 0 : parseInt(entry.getKey(), val);
+                case "gop" -> gop = val.isEmpty() ? 0 : parseInt(entry.getKey(), val);
+                case "pix_fmt" -> pixelFormat = val.isEmpty() ? null : val;
+                default -> throw new IllegalArgumentException("Unknown encoder option: " + entry.getKey());
+            }
+        }
+
+        return new EncoderProfile(name, preset, crf, tune, threads, gop, pixelFormat);
+    }
+
+    private static int parseInt(String option, String val) {
+        try {
+            return Integer.parseInt(val);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " must be an integer: " + val);
+        }
+    }
+
+    /**
+     * @return The settings as options, which {@link #withOptions} reads back. The unset settings are left out.
+     */
+    public String toOptions() {
+        List<String> options = new ArrayList<>();
+        if (preset != null) options.add("preset=" + preset);
+        if (crf >= 0) options.add("crf=" + crf);
+        if (tune != null) options.add("tune=" + tune);
+        if (threads > 0) options.add("threads=" + threads);
+        if (gop > 0) options.add("gop=" + gop);
+        if (pixelFormat != null) options.add("pix_fmt=" + pixelFormat);
+
+        return String.join(",", options);
+    }
+
+    /**
+     * @return If the video is encoded at a constant quality instead of the bitrate of the export.
+     */
+    public boolean isConstantQuality() {
+        return crf >= 0;
+    }
+
+    /**
+     * Set the settings of this profile to a recorder. Call it after the codec, the frame rate and the bitrate are set.
+     * The preset and the tune are only set for x264 and x265, since the other encoders don't have them.
+     *
+     * @throws IllegalArgumentException If the pixel format is unknown to ffmpeg.
+     */
+    public void apply(FFmpegFrameRecorder recorder, int codecID, double fps) {
+        if (threads > 0)
+            recorder.setVideoOption("threads", String.valueOf(threads));
+        // PNG frames are lossless and independent, the rest don't mean anything to them.
+        if (codecID == avcodec.AV_CODEC_ID_PNG) return;
+
+        boolean isX26x = codecID == avcodec.AV_CODEC_ID_H264 || codecID == avcodec.AV_CODEC_ID_HEVC;
+        if (isX26x && preset != null)
+            recorder.setVideoOption("preset", preset);
+        if (isX26x && tune != null)
+            recorder.setVideoOption("tune", tune);
+        if (crf >= 0) {
+            recorder.setVideoOption("crf", String.valueOf(crf));
+            // libvpx and libaom only encode at a constant quality without a target bitrate.
+            recorder.setVideoBitrate(0);
+        }
+        if (gop > 0)
+            recorder.setGopSize((int) Math.round(gop * fps));
+        if (pixelFormat != null) {
+            int pixFmt = avutil.av_get_pix_fmt(pixelFormat);
+            if (pixFmt == avutil.AV_PIX_FMT_NONE)
+                throw new IllegalArgumentException("Unknown pixel format: " + pixelFormat);
+            recorder.setPixelFormat(pixFmt);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package net.okt.system.export;
+
+import net.okt.system.VideoMaker;
+
+/**
+ * An export waiting in or run by an {@link ExportQueue}. The {@link VideoMaker} is only created when the job starts,
+ * so a queue of many jobs doesn't load all the projects up front.
+ */
+public class ExportJob {
+    private final String name;
+    private final int priority;
+    private final VideoMakerFactory factory;
+    private final ExportProgress progress = new ExportProgress();
+
+    private State state = State.QUEUED;
+    private VideoMaker videoMaker;
+    private Result result;
+
+    /**
+     * @param name     The name shown in the summary.
+     * @param priority Jobs with a higher priority are started first. Jobs with the same priority are started in the
+     *                 order they are submitted.
+     */
+    public ExportJob(String name, int priority, VideoMakerFactory factory) {
+        this.name = name;
+        this.priority = priority;
+        this.factory = factory;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return The progress of the export. It only moves while the job is running.
+     */
+    public ExportProgress getProgress() {
+        return progress;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The result of the job, or null if it hasn't ended.
+     */
+    public synchronized Result getResult() {
+        return result;
+    }
+
+    /**
+     * Cancel the job. A queued job won't be started, and a running one is stopped like closing the progress dialog,
+     * which deletes the unfinished output.
+     */
+    public synchronized void cancel() {
+        if (state == State.QUEUED) {
+            end(State.CANCELLED, 0, 0, "Cancelled before it started.");
+        } else if (state == State.RUNNING) {
+            state = State.CANCELLING;
+            if (videoMaker != null)
+                videoMaker.stopProcessing();
+        }
+    }
+
+    /**
+     * Create the video maker and run it on the calling thread.
+     *
+     * @param renderThreads The render threads given to this job.
+     */
+    void run(int renderThreads) {
+        synchronized (this) {
+            if (state != State.QUEUED) return;
+            state = State.RUNNING;
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            VideoMaker maker = factory.create(renderThreads, progress);
+            synchronized (this) {
+                videoMaker = maker;
+                // Cancelled while the project was loading.
+                if (state == State.CANCELLING)
+                    maker.stopProcessing();
+            }
+            maker.run();
+        } catch (Exception e) {
+            // Ended like the failures reported by the maker, so the summary shows why.
+            progress.fail("Export job failed: " + e);
+        }
+        long wallTime = (System.nanoTime() - startTime) / 1000000;
+
+        synchronized (this) {
+            State endState;
+            if (state == State.CANCELLING) endState = State.CANCELLED;
+            else if (progress.getState() == ExportProgress.State.FINISHED) endState = State.FINISHED;
+            else endState = State.FAILED;
+
+            end(endState, progress.getRecordedFrames() - progress.getSkippedFrames(), wallTime, progress.getMessage());
+        }
+    }
+
+    private void end(State endState, int frames, long wallTime, String message) {
+        state = endState;
+        videoMaker = null;
+        // The progress sums the files of a folder output too, like an image sequence.
+        long outputSize = endState == State.FINISHED ? progress.getBytesWritten() : 0;
+        result = new Result(name, endState, frames, wallTime, outputSize, message);
+    }
+
+    public enum State {
+        QUEUED, RUNNING, CANCELLING, FINISHED, FAILED, CANCELLED
+    }
+
+    /**
+     * Creates the video maker of a job when it starts.
+     */
+    @FunctionalInterface
+    public interface VideoMakerFactory {
+        /**
+         * @param renderThreads The render threads the maker may use.
+         * @param progress      The progress the maker must report to.
+         */
+        VideoMaker create(int renderThreads, ExportProgress progress) throws Exception;
+    }
+
+    /**
+     * The throughput of an ended job.
+     *
+     * @param frames     The number of frames recorded. The frames resumed from an earlier run are not counted.
+     * @param wallTime   The time (ms) from the start to the end of the job.
+     * @param outputSize The size (bytes) of the output file, or of all the files in the output folder. 0 if the job
+     *                   didn't finish.
+     * @param message    The message the export ended with, like why it failed. Null if there's none.
+     */
+    public record Result(String name, State state, int frames, long wallTime, long outputSize, String message) {
+        /**
+         * @return The recorded frames per second of wall time.
+         */
+        public double getFps() {
+            return wallTime == 0 ? 0 : frames * 1000.0 / wallTime;
+        }
+    }
+}
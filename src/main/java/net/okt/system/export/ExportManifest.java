@@ -0,0 +1,237 @@
+package net.okt.system.export;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The state of a segmented export, kept in a folder next to the output file. The folder holds the encoded segments and
+ * a manifest of which of them are complete. The manifest is saved every time a segment is complete, so an export
+ * stopped by the user or a crash can continue from the first incomplete segment.
+ * <p>
+ * A manifest only belongs to an export of the same settings, which is told by its key. A manifest with another key is
+ * thrown away with its segments. The project can change between the exports: every segment also has a fingerprint of
+ * its frames, and only the complete segments whose frames have changed are encoded again. So a manifest kept after an
+ * export works as a cache for the next export of the same project.
+ */
+public class ExportManifest {
+    private static final String MANIFEST_FILE_NAME = "manifest.properties";
+
+    private final File dir;
+    private final String key;
+    private final String extension;
+    private final int[] segmentStarts;
+    private final int totalFrames;
+    /**
+     * The size (bytes) of each complete segment file, or -1 if the segment isn't complete.
+     */
+    private final long[] segmentSizes;
+    /**
+     * The fingerprint of the frames of each segment, or null if unknown. See
+     * {@link SegmentPlanner#getContentFingerprints}.
+     */
+    private final String[] segmentFingerprints;
+
+    private ExportManifest(File dir, String key, String extension, int[] segmentStarts, int totalFrames,
+                           long[] segmentSizes, String[] segmentFingerprints) {
+        this.dir = dir;
+        this.key = key;
+        this.extension = extension;
+        this.segmentStarts = segmentStarts;
+        this.totalFrames = totalFrames;
+        this.segmentSizes = segmentSizes;
+        this.segmentFingerprints = segmentFingerprints;
+    }
+
+    /**
+     * Load the manifest in the folder if it has the given key, or start a new one.
+     *
+     * @param key           Everything that affects the output, like the project fingerprint and the video settings.
+     * @param extension     The extension of the segment files.
+     * @param segmentStarts The start frames of the segments of a new manifest. A loaded manifest keeps its own.
+     */
+    public static ExportManifest loadOrCreate(File dir, String key, String extension, int[] segmentStarts,
+                                              int totalFrames) throws IOException {
+        ExportManifest loaded = load(dir, key, extension);
+        if (loaded != null && loaded.totalFrames == totalFrames) {
+            System.out.println("Resuming the export with " + loaded.getCompleteSegments() + "/" +
+                    loaded.getSegmentCount() + " segments complete.");
+            return loaded;
+        }
+
+        // Nothing to resume. Clear anything left by another export.
+        deleteDir(dir);
+        Files.createDirectories(dir.toPath());
+
+        long[] segmentSizes = new long[segmentStarts.length];
+        Arrays.fill(segmentSizes, -1);
+        ExportManifest manifest = new ExportManifest(dir, key, extension, segmentStarts.clone(), totalFrames,
+                segmentSizes, new String[segmentStarts.length]);
+        manifest.save();
+        return manifest;
+    }
+
+    private static ExportManifest load(File dir, String key, String extension) {
+        File file = new File(dir, MANIFEST_FILE_NAME);
+        if (!file.exists()) return null;
+
+        Properties props = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            props.load(reader);
+
+            if (!key.equals(props.getProperty("key"))) return null;
+
+            int totalFrames = Integer.parseInt(props.getProperty("totalFrames"));
+            int segmentCount = Integer.parseInt(props.getProperty("segments"));
+            int[] segmentStarts = new int[segmentCount];
+            long[] segmentSizes = new long[segmentCount];
+            String[] segmentFingerprints = new String[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segmentStarts[i] = Integer.parseInt(props.getProperty("segment." + i + ".start"));
+                segmentSizes[i] = Long.parseLong(props.getProperty("segment." + i + ".size", "-1"));
+                segmentFingerprints[i] = props.getProperty("segment." + i + ".fingerprint");
+            }
+
+            ExportManifest manifest = new ExportManifest(dir, key, extension, segmentStarts, totalFrames,
+                    segmentSizes, segmentFingerprints);
+            // A segment file changed after it was complete can't be trusted.
+            for (int i = 0; i < segmentCount; i++) {
+                if (segmentSizes[i] >= 0 && manifest.getSegmentFile(i).length() != segmentSizes[i])
+                    segmentSizes[i] = -1;
+            }
+            return manifest;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignored an unreadable export manifest: " + file);
+            return null;
+        }
+    }
+
+    public int getSegmentCount() {
+        return segmentStarts.length;
+    }
+
+    public int getStartFrame(int segment) {
+        return segmentStarts[segment];
+    }
+
+    /**
+     * @return The frame after the last frame of the segment.
+     */
+    public int getEndFrame(int segment) {
+        return segment + 1 < segmentStarts.length ? segmentStarts[segment + 1] : totalFrames;
+    }
+
+    /**
+     * @return The start frames of all the segments.
+     */
+    public int[] getSegmentStarts() {
+        return segmentStarts.clone();
+    }
+
+    public File getSegmentFile(int segment) {
+        return new File(dir, "segment" + segment + "." + extension);
+    }
+
+    public synchronized boolean isComplete(int segment) {
+        return segmentSizes[segment] >= 0;
+    }
+
+    public synchronized int getCompleteSegments() {
+        return (int) Arrays.stream(segmentSizes).filter(size -> size >= 0).count();
+    }
+
+    /**
+     * @return The number of frames in the complete segments.
+     */
+    public synchronized int getCompleteFrames() {
+        int frames = 0;
+        for (int i = 0; i < segmentSizes.length; i++) {
+            if (segmentSizes[i] >= 0)
+                frames += getEndFrame(i) - getStartFrame(i);
+        }
+        return frames;
+    }
+
+    /**
+     * Record the segment as complete and save the manifest. Call it after the segment file is closed.
+     */
+    public synchronized void markComplete(int segment) throws IOException {
+        segmentSizes[segment] = getSegmentFile(segment).length();
+        save();
+    }
+
+    /**
+     * Set the fingerprints of the frames the segments should have now. The complete segments with other fingerprints
+     * were encoded from frames that have changed since, so they are deleted to be encoded again. Call it before
+     * encoding any segment.
+     *
+     * @param fingerprints The fingerprint of each segment, see {@link SegmentPlanner#getContentFingerprints}.
+     * @return The number of complete segments deleted.
+     */
+    public synchronized int updateFingerprints(String[] fingerprints) throws IOException {
+        int changedSegments = 0;
+        for (int i = 0; i < segmentSizes.length; i++) {
+            if (segmentSizes[i] >= 0 && !fingerprints[i].equals(segmentFingerprints[i])) {
+                segmentSizes[i] = -1;
+                getSegmentFile(i).delete();
+                changedSegments++;
+            }
+            segmentFingerprints[i] = fingerprints[i];
+        }
+
+        save();
+        return changedSegments;
+    }
+
+    /**
+     * Delete the incomplete segment files, so only what can be resumed is left.
+     */
+    public synchronized void deleteIncompleteSegments() {
+        for (int i = 0; i < segmentSizes.length; i++) {
+            if (segmentSizes[i] < 0)
+                getSegmentFile(i).delete();
+        }
+    }
+
+    /**
+     * Delete the folder with the manifest and all the segments.
+     */
+    public void delete() {
+        deleteDir(dir);
+    }
+
+    private void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("key", key);
+        props.setProperty("totalFrames", String.valueOf(totalFrames));
+        props.setProperty("segments", String.valueOf(segmentStarts.length));
+        for (int i = 0; i < segmentStarts.length; i++) {
+            props.setProperty("segment." + i + ".start", String.valueOf(segmentStarts[i]));
+            if (segmentSizes[i] >= 0)
+                props.setProperty("segment." + i + ".size", String.valueOf(segmentSizes[i]));
+            if (segmentFingerprints[i] != null)
+                props.setProperty("segment." + i + ".fingerprint", segmentFingerprints[i]);
+        }
+
+        // Write to a temporary file and move it, so a crash never leaves a half written manifest.
+        File file = new File(dir, MANIFEST_FILE_NAME);
+        File tempFile = new File(dir, MANIFEST_FILE_NAME + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            props.store(writer, "Open Karaoke Toolkit export manifest");
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,145 @@
+package net.okt.system.export;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of an export. The export threads only bump counters here, which is cheap enough to do on every frame.
+ * Whoever shows the progress, like the progress dialog or the command line, reads it at its own rate with a
+ * {@link ProgressSampler}, on its own thread.
+ */
+public class ExportProgress {
+    private final AtomicInteger renderedFrames = new AtomicInteger();
+    private final AtomicInteger recordedFrames = new AtomicInteger();
+    /**
+     * The files and folders that the export writes to. Their size is the bytes written.
+     */
+    private final List<File> outputs = new CopyOnWriteArrayList<>();
+
+    private volatile long startTime = System.nanoTime();
+    private volatile int totalFrames;
+    private volatile int skippedFrames;
+    private volatile State state = State.RUNNING;
+    private volatile String message;
+
+    /**
+     * Called when the export starts. The elapsed time counts from here.
+     */
+    public void setTotal(int totalFrames) {
+        this.totalFrames = totalFrames;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Count frames that don't need to be exported, like the complete segments of a resumed export. They count as
+     * recorded, but not in the rates.
+     */
+    public void addSkippedFrames(int frames) {
+        skippedFrames += frames;
+        recordedFrames.addAndGet(frames);
+    }
+
+    /**
+     * Called by the render threads every time a frame is rendered.
+     */
+    public void frameRendered() {
+        renderedFrames.incrementAndGet();
+    }
+
+    /**
+     * Called every time a frame is recorded.
+     */
+    public void frameRecorded() {
+        recordedFrames.incrementAndGet();
+    }
+
+    /**
+     * Add a file or a folder the export writes to, to count the bytes written.
+     */
+    public void watchOutput(File output) {
+        outputs.add(output);
+    }
+
+    /**
+     * Called when the export is finished and the output file is complete.
+     */
+    public void finish(String message) {
+        end(State.FINISHED, message);
+    }
+
+    /**
+     * Called when the export is stopped before it's finished.
+     */
+    public void stop(String message) {
+        end(State.STOPPED, message);
+    }
+
+    /**
+     * Called when the export fails.
+     */
+    public void fail(String message) {
+        end(State.FAILED, message);
+    }
+
+    private void end(State state, String message) {
+        this.message = message;
+        this.state = state;
+    }
+
+    public int getTotalFrames() {
+        return totalFrames;
+    }
+
+    public int getRenderedFrames() {
+        return renderedFrames.get();
+    }
+
+    public int getRecordedFrames() {
+        return recordedFrames.get();
+    }
+
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return The message of the end of the export, or null if it's still running.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The time (ms) since the export started.
+     */
+    public long getElapsedTime() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * @return The size of all the watched outputs. This touches the file system, so it's only for the samplers.
+     */
+    public long getBytesWritten() {
+        long bytes = 0;
+        for (File output : outputs) {
+            File[] files = output.listFiles();
+            if (files == null) {
+                bytes += output.length();
+            } else {
+                for (File file : files)
+                    bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    public enum State {
+        RUNNING, FINISHED, STOPPED, FAILED
+    }
+}
@@ -0,0 +1,120 @@
+package net.okt.system.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs many {@link ExportJob}s, at most {@link #maxJobs} at the same time, in the order of their priority. The render
+ * threads are split evenly between the running jobs.
+ */
+public class ExportQueue {
+    private final int maxJobs;
+    private final int renderThreads;
+    private final PriorityQueue<QueuedJob> queue = new PriorityQueue<>(
+            Comparator.comparingInt((QueuedJob j) -> -j.job.getPriority()).thenComparingLong(j -> j.order));
+    private final List<ExportJob> jobs = new ArrayList<>();
+    /**
+     * Released when {@link #runAll()} returns.
+     */
+    private final CountDownLatch runEnded = new CountDownLatch(1);
+    private long submittedJobs;
+
+    /**
+     * @param maxJobs       The maximum number of jobs running at the same time.
+     * @param renderThreads The total number of render threads of all the running jobs.
+     */
+    public ExportQueue(int maxJobs, int renderThreads) {
+        this.maxJobs = Math.max(1, maxJobs);
+        this.renderThreads = Math.max(1, renderThreads);
+    }
+
+    public synchronized void submit(ExportJob job) {
+        queue.add(new QueuedJob(job, submittedJobs++));
+        jobs.add(job);
+    }
+
+    /**
+     * @return All the submitted jobs, in the submitted order.
+     */
+    public synchronized List<ExportJob> getJobs() {
+        return Collections.unmodifiableList(new ArrayList<>(jobs));
+    }
+
+    /**
+     * Cancel all the queued and running jobs.
+     */
+    public void cancelAll() {
+        for (ExportJob job : getJobs())
+            job.cancel();
+    }
+
+    /**
+     * Run the queued jobs until there are none left, and wait for them to end. Jobs can be cancelled by other threads
+     * meanwhile. A job submitted meanwhile only runs if a runner is still busy and takes it after its current job; a
+     * runner that finds the queue empty ends, and the jobs submitted after all the runners end need another run.
+     *
+     * @return The results of all the jobs, in the submitted order.
+     */
+    public List<ExportJob.Result> runAll() throws InterruptedException {
+        try {
+            return runJobs();
+        } finally {
+            runEnded.countDown();
+        }
+    }
+
+    /**
+     * Wait until {@link #runAll()} returns, without joining the thread that called it. After {@link #cancelAll()},
+     * this is how long the cancelled exports take to clean up.
+     */
+    public void awaitRunAll() throws InterruptedException {
+        runEnded.await();
+    }
+
+    private List<ExportJob.Result> runJobs() throws InterruptedException {
+        int jobRenderThreads = Math.max(1, renderThreads / maxJobs);
+
+        Thread[] runners = new Thread[maxJobs];
+        for (int i = 0; i < maxJobs; i++) {
+            runners[i] = new Thread(() -> {
+                ExportJob job;
+                while ((job = poll()) != null)
+                    job.run(jobRenderThreads);
+            }, "ExportQueue-runner-" + i);
+            runners[i].start();
+        }
+
+        try {
+            for (Thread runner : runners)
+                runner.join();
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+
+        List<ExportJob.Result> results = new ArrayList<>();
+        for (ExportJob job : getJobs()) {
+            if (job.getResult() != null)
+                results.add(job.getResult());
+        }
+        return results;
+    }
+
+    private synchronized ExportJob poll() {
+        QueuedJob queuedJob;
+        // Skip the jobs cancelled while waiting.
+        while ((queuedJob = queue.poll()) != null) {
+            if (queuedJob.job.getState() == ExportJob.State.QUEUED)
+                return queuedJob.job;
+        }
+
+        return null;
+    }
+
+    private record QueuedJob(ExportJob job, long order) {
+    }
+}
@@ -0,0 +1,145 @@
+package net.okt.system.export;
+
+import net.okt.system.render.FrameState;
+import org.bytedeco.javacv.Frame;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * A reusable pair of a Java2D raster and a native ffmpeg {@link Frame} of the same size. Both are allocated once, so
+ * reusing a buffer for every frame keeps the heap and the native memory flat during an export.
+ * <p>
+ * Java2D only renders fast to rasters backed by Java arrays, so the frame is drawn to {@link #getImage()} and then
+ * moved to the native frame by {@link #publish()} with a single bulk copy. The frame stays wrapped around the same
+ * native memory, so the recorder reads it directly without any converter in between.
+ */
+public class FrameBuffer implements AutoCloseable {
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final Frame frame;
+    /**
+     * The pixels of {@link #frame} as ints. It's big endian so an ARGB int is stored as the bytes A, R, G, B, which is
+     * what {@link org.bytedeco.ffmpeg.global.avutil#AV_PIX_FMT_ARGB} expects.
+     */
+    private final IntBuffer framePixels;
+    private final int frameStride;
+
+    private FrameState state;
+
+    public FrameBuffer(int width, int height) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        frame = new Frame(width, height, Frame.DEPTH_UBYTE, 4);
+        framePixels = ((ByteBuffer) frame.image[0]).order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        frameStride = frame.imageStride / 4;
+    }
+
+    /**
+     * @return The image to render to. Call {@link #publish()} after rendering.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return The ARGB pixels of {@link #getImage()}.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return The native frame holding the pixels of the last {@link #publish()}.
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return The state of the frame the image holds, or null if it's unknown. A buffer keeps its pixels when it's
+     * reused, so the next frame only needs the regions that differ from this state to be redrawn.
+     */
+    public FrameState getState() {
+        return state;
+    }
+
+    public void setState(FrameState state) {
+        this.state = state;
+    }
+
+    /**
+     * Copy the rendered pixels of {@link #getImage()} to the native frame.
+     */
+    public void publish() {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        framePixels.clear();
+        if (frameStride == width) {
+            framePixels.put(pixels);
+        } else {
+            // The rows of the frame are padded.
+            for (int y = 0; y < height; y++) {
+                framePixels.position(y * frameStride);
+                framePixels.put(pixels, y * width, width);
+            }
+        }
+    }
+
+    /**
+     * Copy only the given regions of {@link #getImage()} to the native frame. The rest of the native frame must
+     * already hold the same pixels as the image.
+     *
+     * @param regions The regions that are redrawn since the last publish, inside the image.
+     */
+    public void publish(List<Rectangle> regions) {
+        int width = image.getWidth();
+        framePixels.clear();
+        for (Rectangle region : regions) {
+            for (int y = region.y; y < region.y + region.height; y++) {
+                framePixels.position(y * frameStride + region.x);
+                framePixels.put(pixels, y * width + region.x, region.width);
+            }
+        }
+    }
+
+    /**
+     * Draw the image of a layer over opaque background pixels to the image of this buffer, then {@link #publish()} it.
+     * The transparent pixels of the layer, which are most of the lyrics layer, just take the background.
+     *
+     * @param background The ARGB pixels of the background, of the same size as this buffer.
+     */
+    public void composite(int[] background, FrameBuffer layer) {
+        int[] layerPixels = layer.pixels;
+        for (int i = 0; i < pixels.length; i++) {
+            int src = layerPixels[i];
+            int alpha = src >>> 24;
+            if (alpha == 0) {
+                pixels[i] = background[i];
+            } else if (alpha == 255) {
+                pixels[i] = src;
+            } else {
+                int dst = background[i];
+                int inverse = 255 - alpha;
+                int r = (((src >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inverse + 127) / 255;
+                int g = (((src >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inverse + 127) / 255;
+                int b = ((src & 0xFF) * alpha + (dst & 0xFF) * inverse + 127) / 255;
+                pixels[i] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+
+        publish();
+    }
+
+    @Override
+    public void close() {
+        frame.close();
+    }
+}
@@ -0,0 +1,60 @@
+package net.okt.system.export;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed number of {@link FrameBuffer}s that are allocated up front and reused during the whole export. Taking a
+ * buffer blocks while all are in use, so the render workers can never get ahead of the encoder by more than the pool,
+ * and the memory of an export stays the same however long it is, or whatever its fps.
+ */
+public class FrameBufferPool implements AutoCloseable {
+    private final List<FrameBuffer> buffers = new ArrayList<>();
+    private final BlockingQueue<FrameBuffer> freeBuffers;
+
+    public FrameBufferPool(int size, int width, int height) {
+        freeBuffers = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            FrameBuffer buffer = new FrameBuffer(width, height);
+            buffers.add(buffer);
+            freeBuffers.add(buffer);
+        }
+    }
+
+    /**
+     * @return The bytes a frame buffer of the size takes: the Java raster and the native frame, 4 bytes a pixel each.
+     */
+    public static long getBufferBytes(int width, int height) {
+        return (long) width * height * 8;
+    }
+
+    /**
+     * @return The number of buffers of the size that fit in the memory limit, but at least minSize and at most maxSize.
+     */
+    public static int getSize(long memoryLimit, int width, int height, int minSize, int maxSize) {
+        long size = memoryLimit / getBufferBytes(width, height);
+        return (int) Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    /**
+     * Take a free buffer, blocking until one is released if all are in use.
+     */
+    public FrameBuffer acquire() throws InterruptedException {
+        return freeBuffers.take();
+    }
+
+    public void release(FrameBuffer buffer) {
+        freeBuffers.add(buffer);
+    }
+
+    /**
+     * Free the native memory of all the buffers. The pool can't be used after this.
+     */
+    @Override
+    public void close() {
+        for (FrameBuffer buffer : buffers)
+            buffer.close();
+    }
+}
@@ -0,0 +1,92 @@
+package net.okt.system.export;
+
+/**
+ * A bounded buffer that accepts frames in any order and hands them out in strict frame order.
+ * <p>
+ * Render workers call {@link #awaitSlot(int)} before rendering a frame, so at most {@link #getCapacity()} frames can
+ * be in flight ahead of the consumer. The consumer (the encoder) calls {@link #take()} to get the frames one by one,
+ * starting from frame 0.
+ */
+public class FrameReorderBuffer<T> {
+    private final Object[] slots;
+
+    /**
+     * The index of the frame the next {@link #take()} call will return.
+     */
+    private int nextIndex;
+    private boolean closed;
+    private Throwable failure;
+
+    public FrameReorderBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1, got: " + capacity);
+
+        this.slots = new Object[capacity];
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Block until the given frame index is inside the window the consumer accepts.
+     *
+     * @return false if the buffer is closed or failed while waiting, in which case the frame should not be rendered.
+     */
+    public synchronized boolean awaitSlot(int index) throws InterruptedException {
+        while (index >= nextIndex + slots.length && !closed && failure == null)
+            wait();
+
+        return !closed && failure == null;
+    }
+
+    /**
+     * Put a finished frame. {@link #awaitSlot(int)} must have returned true for the index before.
+     */
+    public synchronized void put(int index, T item) {
+        if (closed || failure != null) return;
+        if (index < nextIndex || index >= nextIndex + slots.length)
+            throw new IllegalStateException("Frame " + index + " is out of the window starting at " + nextIndex);
+
+        slots[index % slots.length] = item;
+        notifyAll();
+    }
+
+    /**
+     * Block until the next frame in order is available and return it.
+     *
+     * @throws IllegalStateException If a producer has reported a failure by {@link #fail(Throwable)}.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T take() throws InterruptedException {
+        int slot = nextIndex % slots.length;
+        while (slots[slot] == null) {
+            if (failure != null) throw new IllegalStateException("Frame rendering failed.", failure);
+            if (closed) return null;
+            wait();
+        }
+
+        T item = (T) slots[slot];
+        slots[slot] = null;
+        nextIndex++;
+        notifyAll();
+
+        return item;
+    }
+
+    /**
+     * Report a producer failure. The consumer will get an exception on its next {@link #take()}.
+     */
+    public synchronized void fail(Throwable t) {
+        if (failure == null) failure = t;
+        notifyAll();
+    }
+
+    /**
+     * Release all the waiting threads. Used when the export is stopped.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,85 @@
+package net.okt.system.export;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVIOContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacv.FrameRecorder;
+
+/**
+ * Muxes the compressed packets of streams from different inputs to one file, without decoding anything. A recorder
+ * can only copy the streams of a single input, so this is what puts the video copied from the segments of an export
+ * and the audio copied from the source together.
+ * <p>
+ * The packets are written in the order they are given, so the caller interleaves them by their times, like
+ * {@link AudioWriter} does.
+ */
+public class PacketMuxer implements AutoCloseable {
+    private final AVFormatContext outputContext = new AVFormatContext(null);
+    private final AVStream[] inputStreams;
+    private final boolean hasFile;
+
+    /**
+     * Open the file and write the header of the format.
+     *
+     * @param inputStreams The streams to copy. The output stream i has the codec of the input stream i.
+     */
+    public PacketMuxer(String file, String format, AVStream... inputStreams) throws FrameRecorder.Exception {
+        this.inputStreams = inputStreams;
+        check(avformat.avformat_alloc_output_context2(outputContext, null, format, file),
+                "Failed to create the " + format + " output");
+
+        for (AVStream inputStream : inputStreams) {
+            AVStream stream = avformat.avformat_new_stream(outputContext, (AVCodec) null);
+            if (stream == null) throw new FrameRecorder.Exception("Failed to add a stream to the output.");
+            check(avcodec.avcodec_parameters_copy(stream.codecpar(), inputStream.codecpar()),
+                    "Failed to copy the stream parameters");
+            // The tag of the input container may not be valid in this one. The muxer picks its own.
+            stream.codecpar().codec_tag(0);
+            stream.time_base(inputStream.time_base());
+        }
+
+        hasFile = (outputContext.oformat().flags() & avformat.AVFMT_NOFILE) == 0;
+        if (hasFile) {
+            AVIOContext pb = new AVIOContext(null);
+            check(avformat.avio_open(pb, file, avformat.AVIO_FLAG_WRITE), "Failed to open " + file);
+            outputContext.pb(pb);
+        }
+        check(avformat.avformat_write_header(outputContext, (PointerPointer) null), "Failed to write the header");
+    }
+
+    /**
+     * Write a packet of an input stream. The packet is taken by the muxer, and is blank after this.
+     *
+     * @param input The index of the stream in the constructor.
+     */
+    public void write(AVPacket packet, int input) throws FrameRecorder.Exception {
+        packet.stream_index(input);
+        packet.pos(-1);
+        avcodec.av_packet_rescale_ts(packet, inputStreams[input].time_base(), outputContext.streams(input).time_base());
+        check(avformat.av_interleaved_write_frame(outputContext, packet), "Failed to write a packet");
+    }
+
+    /**
+     * Write the trailer of the format and close the file.
+     */
+    @Override
+    public void close() throws FrameRecorder.Exception {
+        try {
+            check(avformat.av_write_trailer(outputContext), "Failed to write the trailer");
+        } finally {
+            if (hasFile)
+                avformat.avio_closep(outputContext.pb());
+            avformat.avformat_free_context(outputContext);
+        }
+    }
+
+    private static void check(int result, String message) throws FrameRecorder.Exception {
+        if (result < 0)
+            throw new FrameRecorder.Exception(message + " (error " + result + ").");
+    }
+}
@@ -0,0 +1,96 @@
+package net.okt.system.export;
+
+import java.util.Locale;
+
+/**
+ * Reads an {@link ExportProgress} and works out the rates between the reads. Call {@link #sample()} at a fixed rate,
+ * from a single thread, like a scheduled task. A sample reads the size of the outputs from the file system, so it
+ * shouldn't be taken on the event dispatch thread.
+ */
+public class ProgressSampler {
+    private final ExportProgress progress;
+
+    private long lastTime;
+    private int lastRendered, lastRecorded;
+
+    public ProgressSampler(ExportProgress progress) {
+        this.progress = progress;
+        this.lastRecorded = progress.getRecordedFrames();
+        this.lastRendered = progress.getRenderedFrames();
+        this.lastTime = progress.getElapsedTime();
+    }
+
+    public ExportProgress getProgress() {
+        return progress;
+    }
+
+    public Sample sample() {
+        long time = progress.getElapsedTime();
+        // The export has started after the last sample, and the elapsed time is counted from then.
+        if (time < lastTime) lastTime = 0;
+        int rendered = progress.getRenderedFrames();
+        int recorded = progress.getRecordedFrames();
+        int total = progress.getTotalFrames();
+
+        double seconds = (time - lastTime) * 0.001;
+        double renderFps = seconds > 0 ? (rendered - lastRendered) / seconds : 0;
+        double encodeFps = seconds > 0 ? (recorded - lastRecorded) / seconds : 0;
+        lastTime = time;
+        lastRendered = rendered;
+        lastRecorded = recorded;
+
+        // The ETA uses the average rate since the start, so it doesn't jump around with the frame complexity.
+        int exported = recorded - progress.getSkippedFrames();
+        long eta = exported > 0 && time > 0 ? (long) ((double) (total - recorded) * time / exported) : -1;
+
+        return new Sample(progress.getState(), recorded, total, renderFps, encodeFps, eta, time,
+                progress.getBytesWritten());
+    }
+
+    /**
+     * @param recordedFrames The frames recorded so far.
+     * @param renderFps      The frames rendered per second since the last sample.
+     * @param encodeFps      The frames recorded per second since the last sample.
+     * @param eta            The estimated time (ms) left, or -1 if it's unknown yet.
+     * @param elapsedTime    The time (ms) since the export started.
+     * @param bytesWritten   The size of the outputs so far.
+     */
+    public record Sample(ExportProgress.State state, int recordedFrames, int totalFrames, double renderFps,
+                         double encodeFps, long eta, long elapsedTime, long bytesWritten) {
+        public int getPercent() {
+            return totalFrames > 0 ? (int) (recordedFrames * 100L / totalFrames) : 0;
+        }
+
+        /**
+         * @return A one line text of the sample, like "frames: 120/3000 (4%) | render 95.1 fps | encode 60.0 fps |
+         * ETA 0:48 | 12.4 MB".
+         */
+        public String describe() {
+            return describeFrames() + " | " + describeRates();
+        }
+
+        /**
+         * @return The frames part of {@link #describe()}.
+         */
+        public String describeFrames() {
+            return "frames: " + recordedFrames + "/" + totalFrames + " (" + getPercent() + "%)";
+        }
+
+        /**
+         * @return The rates part of {@link #describe()}.
+         */
+        public String describeRates() {
+            return String.format(Locale.ROOT, "render %.1f fps | encode %.1f fps | ETA %s | %.1f MB", renderFps,
+                    encodeFps, formatTime(eta), bytesWritten / 1048576.0);
+        }
+
+        private static String formatTime(long millis) {
+            if (millis < 0) return "--:--";
+
+            long seconds = millis / 1000;
+            if (seconds >= 3600)
+                return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+            return String.format(Locale.ROOT, "%d:%02d", seconds / 60, seconds % 60);
+        }
+    }
+}
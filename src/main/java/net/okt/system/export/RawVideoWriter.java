@@ -0,0 +1,151 @@
+package net.okt.system.export;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes uncompressed frames to a file or a named pipe, for an external encoder to read as fast as they are rendered.
+ * Nothing is encoded, so the only cost is the conversion of the pixels.
+ * <p>
+ * The RGBA stream is the bare pixels, frame after frame, which the reader needs the size and the fps of. With ffmpeg:
+ * {@code ffmpeg -f rawvideo -pixel_format rgba -video_size 1920x1080 -framerate 30 -i frames.rgba ...}. The Y4M stream
+ * has them in its header, so {@code ffmpeg -i frames.y4m ...} is enough, but it has no alpha.
+ */
+public class RawVideoWriter implements AutoCloseable {
+    public enum Format {
+        /**
+         * 8-bit R, G, B, A bytes of every pixel, not premultiplied.
+         */
+        RGBA("rgba"),
+        /**
+         * YUV4MPEG2 with 4:2:0 BT.709 limited range pixels, which any encoder can take as they are.
+         */
+        Y4M("y4m");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return The format of the name, like "y4m", or null if it's not a raw format.
+         */
+        public static Format of(String name) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(name))
+                    return format;
+            }
+            return null;
+        }
+    }
+
+    private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final Format format;
+    private final int width, height;
+    private final int chromaWidth, chromaHeight;
+    /**
+     * The bytes of a frame, reused for every frame.
+     */
+    private final byte[] frameBytes;
+
+    /**
+     * Open the file and write the stream header. Opening a named pipe blocks until a reader opens it.
+     */
+    public RawVideoWriter(String file, Format format, int width, int height, int fps) throws IOException {
+        this(new FileOutputStream(file), format, width, height, fps);
+    }
+
+    public RawVideoWriter(OutputStream out, Format format, int width, int height, int fps) throws IOException {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        // Odd sizes round the chroma planes up, like ffmpeg does.
+        this.chromaWidth = (width + 1) / 2;
+        this.chromaHeight = (height + 1) / 2;
+
+        if (format == Format.Y4M) {
+            frameBytes = new byte[width * height + chromaWidth * chromaHeight * 2];
+            String header = String.format(Locale.ROOT, "YUV4MPEG2 W%d H%d F%d:1 Ip A1:1 C420jpeg XCOLORRANGE=LIMITED\n",
+                    width, height, fps);
+            this.out.write(header.getBytes(StandardCharsets.US_ASCII));
+        } else {
+            frameBytes = new byte[width * height * 4];
+        }
+    }
+
+    /**
+     * Write a frame.
+     *
+     * @param pixels The ARGB pixels of the frame, not premultiplied.
+     */
+    public void write(int[] pixels) throws IOException {
+        if (format == Format.Y4M) {
+            toYuv420(pixels);
+            out.write(FRAME_HEADER);
+        } else {
+            toRgba(pixels);
+        }
+        out.write(frameBytes);
+    }
+
+    private void toRgba(int[] pixels) {
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 4) {
+            int argb = pixels[i];
+            frameBytes[j] = (byte) (argb >> 16);
+            frameBytes[j + 1] = (byte) (argb >> 8);
+            frameBytes[j + 2] = (byte) argb;
+            frameBytes[j + 3] = (byte) (argb >>> 24);
+        }
+    }
+
+    /**
+     * Convert the pixels to the Y, U and V planes of {@link #frameBytes}, in 16.16 fixed point. The chroma of every 2x2
+     * block is taken from the average of its colors. The alpha is dropped, so the pixels should be opaque.
+     */
+    private void toYuv420(int[] pixels) {
+        int uOffset = width * height;
+        int vOffset = uOffset + chromaWidth * chromaHeight;
+
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            int r = (argb >> 16) & 0xFF, g = (argb >> 8) & 0xFF, b = argb & 0xFF;
+            frameBytes[i] = (byte) ((11966 * r + 40254 * g + 4064 * b + (16 << 16) + 32768) >> 16);
+        }
+
+        for (int cy = 0; cy < chromaHeight; cy++) {
+            int y0 = cy * 2;
+            int y1 = Math.min(y0 + 1, height - 1);
+            for (int cx = 0; cx < chromaWidth; cx++) {
+                int x0 = cx * 2;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int p00 = pixels[y0 * width + x0], p01 = pixels[y0 * width + x1];
+                int p10 = pixels[y1 * width + x0], p11 = pixels[y1 * width + x1];
+                int r = ((p00 >> 16) & 0xFF) + ((p01 >> 16) & 0xFF) + ((p10 >> 16) & 0xFF) + ((p11 >> 16) & 0xFF);
+                int g = ((p00 >> 8) & 0xFF) + ((p01 >> 8) & 0xFF) + ((p10 >> 8) & 0xFF) + ((p11 >> 8) & 0xFF);
+                int b = (p00 & 0xFF) + (p01 & 0xFF) + (p10 & 0xFF) + (p11 & 0xFF);
+
+                // The sums are 4 times the average, so the factors are a quarter.
+                int c = cy * chromaWidth + cx;
+                frameBytes[uOffset + c] = (byte) ((-1649 * r - 5548 * g + 7197 * b + (128 << 16) + 32768) >> 16);
+                frameBytes[vOffset + c] = (byte) ((7197 * r - 6537 * g - 660 * b + (128 << 16) + 32768) >> 16);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
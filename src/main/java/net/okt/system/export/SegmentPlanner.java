@@ -0,0 +1,188 @@
+package net.okt.system.export;
+
+import net.okt.system.LyricsProcessor;
+import net.okt.system.render.FrameState;
+import net.okt.system.render.KaraokeRenderer;
+import net.okt.system.render.ProjectSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Splits an export into time segments that can be encoded separately. The segments are cut at the gaps between
+ * paragraphs, where the frames are static, so every segment starts with a keyframe on a quiet frame. The checkpoints of
+ * a resumable export can be cut between any frames too, where there's no gap near them.
+ */
+public class SegmentPlanner {
+    /**
+     * The properties that don't affect how the frames look, or are covered by the frames themselves.
+     */
+    private static final Set<String> NON_STYLE_PROPS = Set.of("text", "marks", "audio");
+
+    /**
+     * @return The times (ms) in the middle of each gap between paragraphs, in order.
+     */
+    public static List<Integer> getParagraphGapTimes(ProjectSnapshot snapshot) {
+        LyricsProcessor lyricsProcessor = snapshot.getLyricsProcessor();
+        List<Integer> marks = snapshot.getMarks();
+        int readyDotsPeriod = snapshot.getPropInt("dotsPeriod");
+        int textDisappearTime = snapshot.getPropInt("textDisappearTime");
+
+        List<Integer> gapTimes = new ArrayList<>();
+        if (lyricsProcessor.getLyricsLines() == null) return gapTimes;
+
+        List<Integer> paragraphEndMarks = lyricsProcessor.getParagraphEndMarks();
+        // The last paragraph end mark is the end of the lyrics, there's no gap after it.
+        for (int i = 0; i < paragraphEndMarks.size() - 1; i++) {
+            int endMark = paragraphEndMarks.get(i);
+            int nextStartMark = endMark + 1;
+            if (nextStartMark >= marks.size()) break;
+
+            int gapStart = marks.get(endMark) + textDisappearTime;
+            int gapEnd = marks.get(nextStartMark) - readyDotsPeriod;
+            // If the ready dots start before the text disappears, there's no static gap. Use the middle of the marks.
+            if (gapEnd <= gapStart) {
+                gapStart = marks.get(endMark);
+                gapEnd = marks.get(nextStartMark);
+            }
+
+            gapTimes.add((gapStart + gapEnd) / 2);
+        }
+
+        return gapTimes;
+    }
+
+    /**
+     * Choose the segment boundaries from the gap times so the segments are as even as possible.
+     *
+     * @param gapTimes    The candidate times (ms) to cut at.
+     * @param totalFrames The number of frames of the whole export.
+     * @param frameLength The length of a frame in ms.
+     * @param maxSegments The maximum number of segments.
+     * @return The start frame of each segment. The first one is always 0. Segment i ends at the start of segment i + 1,
+     * and the last one ends at totalFrames.
+     */
+    public static int[] planSegments(List<Integer> gapTimes, int totalFrames, float frameLength, int maxSegments) {
+        return planSegments(gapTimes, totalFrames, frameLength, maxSegments, false);
+    }
+
+    /**
+     * @param cutAnywhere If a segment is cut at the even split itself when the nearest gap is more than half a segment
+     *                    away from it, so there are maxSegments segments of about the same length even without gaps.
+     * @see #planSegments(List, int, float, int)
+     */
+    public static int[] planSegments(List<Integer> gapTimes, int totalFrames, float frameLength, int maxSegments,
+                                     boolean cutAnywhere) {
+        // The first frame at or after each gap time.
+        TreeSet<Integer> gapFrames = new TreeSet<>();
+        for (int time : gapTimes) {
+            int frame = (int) Math.ceil(time / frameLength);
+            if (frame > 0 && frame < totalFrames)
+                gapFrames.add(frame);
+        }
+
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 1; i < maxSegments; i++) {
+            int target = (int) ((long) i * totalFrames / maxSegments);
+            int lastStart = starts.get(starts.size() - 1);
+
+            // The nearest gap to the target, but after the last start.
+            Integer floor = gapFrames.floor(target);
+            Integer ceiling = gapFrames.ceiling(target);
+            if (floor != null && floor <= lastStart) floor = null;
+            if (ceiling != null && ceiling <= lastStart) ceiling = null;
+
+            Integer chosen;
+            if (floor == null) chosen = ceiling;
+            else if (ceiling == null) chosen = floor;
+            else chosen = target - floor <= ceiling - target ? floor : ceiling;
+
+            if (cutAnywhere && (chosen == null || Math.abs(chosen - target) > totalFrames / maxSegments / 2))
+                chosen = target > lastStart ? target : null;
+
+            if (chosen != null)
+                starts.add(chosen);
+        }
+
+        return starts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Get a hash of what each segment looks like. A segment with the same hash as in an earlier export of the same
+     * settings has exactly the same frames, so its encoded file can be reused even if the project has changed
+     * elsewhere, like a moved mark or an edited line in another paragraph.
+     * <p>
+     * The hash covers the style properties and, for every frame, its {@link FrameState} and the text of the lines it
+     * shows. Moving a mark only changes the frames around it, and editing a line only the frames it is shown in.
+     *
+     * @param segmentStarts The start frames of the segments. See {@link #planSegments}.
+     * @return The hash of each segment.
+     */
+    public static String[] getContentFingerprints(ProjectSnapshot snapshot, int[] segmentStarts, int totalFrames,
+                                                  float frameLength) {
+        KaraokeRenderer renderer = new KaraokeRenderer(snapshot);
+        List<String> lines = snapshot.getLyricsProcessor().getLyricsLines();
+
+        StringBuilder style = new StringBuilder();
+        for (String key : snapshot.getPropKeys()) {
+            if (!NON_STYLE_PROPS.contains(key))
+                style.append(key).append('=').append(snapshot.getProp(key)).append('\n');
+        }
+        style.append("font=").append(snapshot.getFont().getName()).append(',').append(snapshot.getFont().getStyle())
+                .append('\n');
+
+        String[] fingerprints = new String[segmentStarts.length];
+        for (int segment = 0; segment < segmentStarts.length; segment++) {
+            int endFrame = segment + 1 < segmentStarts.length ? segmentStarts[segment + 1] : totalFrames;
+            StringBuilder content = new StringBuilder(style);
+
+            // Runs of the same frame are hashed once with their length, which keeps long static parts cheap.
+            FrameState runState = null;
+            int runLength = 0;
+            for (int i = segmentStarts[segment]; i < endFrame; i++) {
+                FrameState state = renderer.getFrameState((int) (i * frameLength));
+                if (state.equals(runState)) {
+                    runLength++;
+                    continue;
+                }
+
+                if (runState != null)
+                    appendRun(content, runState, runLength, lines);
+                runState = state;
+                runLength = 1;
+            }
+            if (runState != null)
+                appendRun(content, runState, runLength, lines);
+
+            fingerprints[segment] = hash(content.toString());
+        }
+
+        return fingerprints;
+    }
+
+    private static void appendRun(StringBuilder content, FrameState state, int length, List<String> lines) {
+        content.append(state).append('x').append(length).append(':')
+                .append(getLine(lines, state.topLine())).append('|')
+                .append(getLine(lines, state.bottomLine())).append('\n');
+    }
+
+    private static String getLine(List<String> lines, int line) {
+        return lines != null && line >= 0 && line < lines.size() ? lines.get(line) : "";
+    }
+
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // every Java platform has SHA-256.
+        }
+    }
+}
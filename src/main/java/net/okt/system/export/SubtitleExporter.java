@@ -0,0 +1,392 @@
+package net.okt.system.export;
+
+import net.okt.system.LyricsProcessor;
+import net.okt.system.render.ProjectSnapshot;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * Exports the lyrics of a project as karaoke subtitles, for players that can show them by themselves. This takes no
+ * rendering or encoding at all, so it only takes a moment for any length of song.
+ * <p>
+ * The lines are shown at the same times and in the same two places as in the video, and every word is timed by the
+ * marks. The ASS file uses {@code \kf} tags, so the words are wiped like in the video, and has the ready dots too. The
+ * WebVTT file uses cue timestamps, which highlight a whole word when it starts.
+ */
+public class SubtitleExporter {
+    public static final String[] EXTENSIONS = {"ass", "vtt"};
+
+    private final ProjectSnapshot snapshot;
+    private final LyricsProcessor lyricsProcessor;
+    private final List<Integer> marks;
+
+    public SubtitleExporter(ProjectSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.lyricsProcessor = snapshot.getLyricsProcessor();
+        this.marks = snapshot.getMarks();
+    }
+
+    /**
+     * Write the subtitles to the file, in the format of its extension.
+     *
+     * @throws IllegalArgumentException If the extension is not one of {@link #EXTENSIONS}.
+     */
+    public void export(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        boolean isAss = name.endsWith(".ass");
+        if (!isAss && !name.endsWith(".vtt"))
+            throw new IllegalArgumentException("Subtitles must be .ass or .vtt: " + file.getName());
+
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            if (isAss) writeAss(writer);
+            else writeWebVtt(writer);
+        }
+    }
+
+    public void writeAss(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        int width = snapshot.getPropInt("resolutionX");
+        int height = snapshot.getPropInt("resolutionY");
+        String fontName = snapshot.getFont().getFontName();
+        int fontSize = toDrawSize(snapshot.getPropInt("defaultFontSize"));
+        double textOutline = toDrawSize(snapshot.getPropInt("textStroke")) * 0.01 / 2;
+        int dotSize = toDrawSize(snapshot.getPropInt("dotsSize"));
+        double dotsOutline = toDrawSize(snapshot.getPropInt("dotsStroke")) * 0.01 / 2;
+
+        writer.println("[Script Info]");
+        writer.println("; Exported by Open Karaoke Toolkit");
+        writer.println("ScriptType: v4.00+");
+        writer.println("PlayResX: " + width);
+        writer.println("PlayResY: " + height);
+        writer.println("WrapStyle: 2");
+        writer.println("ScaledBorderAndShadow: yes");
+        writer.println();
+
+        // The primary color is the sung part and the secondary is the part not sung yet, like the video.
+        writer.println("[V4+ Styles]");
+        writer.println("Format: Name, Fontname, Fontsize, PrimaryColour, SecondaryColour, OutlineColour, BackColour, " +
+                "Bold, Italic, Underline, StrikeOut, ScaleX, ScaleY, Spacing, Angle, BorderStyle, Outline, Shadow, " +
+                "Alignment, MarginL, MarginR, MarginV, Encoding");
+        writer.printf(Locale.ROOT, "Style: Lyrics,%s,%d,%s,%s,%s,&H00000000,-1,0,0,0,100,100,0,0,1,%.2f,0,1,0,0,0,1%n",
+                fontName, fontSize, toAssColor(snapshot.getPropInt("textColor")), toAssColor(Color.WHITE.getRGB()),
+                toAssColor(Color.BLACK.getRGB()), textOutline);
+        writer.printf(Locale.ROOT,
+                "Style: Dots,%s,%d,%s,&HFF000000,%s,&H00000000,0,0,0,0,100,100,0,0,1,%.2f,0,7,0,0,0,1%n",
+                fontName, dotSize, toAssColor(snapshot.getPropInt("dotsColor")), toAssColor(Color.BLACK.getRGB()),
+                dotsOutline);
+        writer.println();
+
+        writer.println("[Events]");
+        writer.println("Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text");
+        int dotsNum = snapshot.getPropInt("dotsNum");
+        for (int dotsEnd : getParagraphStartTimes()) {
+            int dotsStart = Math.max(0, dotsEnd - snapshot.getPropInt("dotsPeriod"));
+            StringBuilder text = new StringBuilder();
+            text.append("{\\pos(").append(toDrawSize(snapshot.getPropInt("dotsPosX"))).append(',')
+                    .append(toDrawSize(snapshot.getPropInt("dotsPosY"))).append(")}");
+            appendKaraoke(text, dotsStart, dotsStart, dotsEnd, dotsNum);
+            writer.println("Dialogue: 0," + formatAssTime(dotsStart) + "," + formatAssTime(dotsEnd) + ",Dots,,0,0,0,," +
+                    text);
+        }
+        for (Cue cue : getCues()) {
+            Point position = getLinePosition(cue.slot);
+            StringBuilder text = new StringBuilder();
+            text.append("{\\pos(").append(position.x).append(',').append(position.y).append(")}");
+
+            // The karaoke times count from the start of the event.
+            int time = cue.start;
+            boolean isUnsung = false;
+            for (Syllable syllable : cue.syllables) {
+                if (syllable.start < 0) {
+                    // The words after the last mark are in a syllable that starts when the line is gone, so they're
+                    // never sung.
+                    if (!isUnsung) {
+                        int wait = toCentiseconds(cue.end - cue.start) - toCentiseconds(time - cue.start);
+                        if (wait > 0) text.append("{\\k").append(wait).append('}');
+                        text.append("{\\k0}");
+                        isUnsung = true;
+                    }
+                    text.append(escapeAss(syllable.text));
+                    continue;
+                }
+                if (syllable.start > time) {
+                    text.append("{\\k").append(toCentiseconds(syllable.start - cue.start) -
+                            toCentiseconds(time - cue.start)).append('}');
+                    time = syllable.start;
+                }
+                int end = Math.max(time, syllable.end);
+                text.append("{\\kf").append(toCentiseconds(end - cue.start) - toCentiseconds(time - cue.start))
+                        .append('}').append(escapeAss(syllable.text));
+                time = end;
+            }
+            writer.println("Dialogue: 0," + formatAssTime(cue.start) + "," + formatAssTime(cue.end) +
+                    ",Lyrics,,0,0,0,," + text);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Append the ready dots, wiped one by one from start to end.
+     */
+    private void appendKaraoke(StringBuilder text, int eventStart, int start, int end, int dotsNum) {
+        for (int i = 0; i < dotsNum; i++) {
+            int dotStart = start + (end - start) * i / dotsNum;
+            int dotEnd = start + (end - start) * (i + 1) / dotsNum;
+            text.append("{\\kf").append(toCentiseconds(dotEnd - eventStart) - toCentiseconds(dotStart - eventStart))
+                    .append("}●");
+        }
+    }
+
+    public void writeWebVtt(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        int width = snapshot.getPropInt("resolutionX");
+        int height = snapshot.getPropInt("resolutionY");
+        int fontSize = toDrawSize(snapshot.getPropInt("defaultFontSize"));
+
+        writer.println("WEBVTT");
+        writer.println();
+        // The words are in the future until their timestamps, and in the past after.
+        writer.println("STYLE");
+        writer.println("::cue {");
+        writer.println("  color: " + toCssColor(Color.WHITE.getRGB()) + ";");
+        writer.println("  font-family: \"" + snapshot.getFont().getFamily() + "\", sans-serif;");
+        writer.println("  font-weight: bold;");
+        writer.println("}");
+        writer.println("::cue(:past) {");
+        writer.println("  color: " + toCssColor(snapshot.getPropInt("textColor")) + ";");
+        writer.println("}");
+        // The words after the last mark have no timestamp, and are never sung.
+        writer.println("::cue(.unsung) {");
+        writer.println("  color: " + toCssColor(Color.WHITE.getRGB()) + ";");
+        writer.println("}");
+        writer.println();
+
+        int index = 1;
+        for (Cue cue : getCues()) {
+            // The line setting places the top of the cue box, and the position of the video is the baseline.
+            Point position = getLinePosition(cue.slot);
+            float positionPercent = Math.max(0, Math.min(100, position.x * 100f / width));
+            float linePercent = Math.max(0, Math.min(100, (position.y - fontSize) * 100f / height));
+
+            writer.println(index++);
+            writer.printf(Locale.ROOT, "%s --> %s position:%.1f%%,line-left line:%.1f%% align:left%n",
+                    formatVttTime(cue.start), formatVttTime(cue.end), positionPercent, linePercent);
+
+            StringBuilder text = new StringBuilder();
+            boolean isUnsung = false;
+            for (Syllable syllable : cue.syllables) {
+                if (syllable.start < 0) {
+                    // Outside the timed words, which would turn it to the past with the last of them.
+                    if (!isUnsung) text.append("<c.unsung>");
+                    isUnsung = true;
+                } else if (syllable.start > cue.start && syllable.start < cue.end) {
+                    text.append('<').append(formatVttTime(syllable.start)).append('>');
+                }
+                text.append(escapeVtt(syllable.text));
+            }
+            if (isUnsung) text.append("</c>");
+            writer.println(text);
+            writer.println();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Get when every line is shown and where. The lyrics processor decides which two lines are shown at any time,
+     * and this only changes at the marks, at the start of the ready dots and at the disappear time of a paragraph. So
+     * the state in the middle of each span between those times is the state of the whole span.
+     */
+    List<Cue> getCues() {
+        List<Cue> cues = new ArrayList<>();
+        if (marks.isEmpty() || lyricsProcessor.getLyricsLines() == null) return cues;
+
+        int dotsPeriod = snapshot.getPropInt("dotsPeriod");
+        int disappearTime = snapshot.getPropInt("textDisappearTime");
+        TreeSet<Integer> changeTimes = new TreeSet<>(marks);
+        changeTimes.add(0);
+        for (int paragraphEndMark : lyricsProcessor.getParagraphEndMarks()) {
+            if (paragraphEndMark < marks.size())
+                changeTimes.add(marks.get(paragraphEndMark) + disappearTime);
+        }
+        for (int paragraphStart : getParagraphStartTimes())
+            changeTimes.add(Math.max(0, paragraphStart - dotsPeriod));
+
+        // The line shown on each of the 2 places, and since when.
+        int[] shownLines = {-1, -1};
+        int[] shownSince = new int[2];
+        Integer[] times = changeTimes.toArray(new Integer[0]);
+        for (int i = 0; i < times.length; i++) {
+            int start = times[i];
+            int[] lines = {-1, -1};
+            // The last span never ends, and nothing is shown after the last paragraph has disappeared anyway.
+            if (i + 1 < times.length) {
+                LyricsProcessor.TimeState state = lyricsProcessor.getTimeState((start + times[i + 1]) / 2,
+                        dotsPeriod, disappearTime);
+                if (state.shouldDisplayText()) {
+                    lines[0] = state.displayingLines()[0];
+                    lines[1] = state.displayingLines()[1];
+                }
+            }
+
+            for (int slot = 0; slot < 2; slot++) {
+                if (lines[slot] == shownLines[slot]) continue;
+
+                if (isShownLine(shownLines[slot]))
+                    cues.add(new Cue(shownSince[slot], start, slot, getSyllables(shownLines[slot])));
+                shownLines[slot] = lines[slot];
+                shownSince[slot] = start;
+            }
+        }
+
+        cues.sort((a, b) -> a.start != b.start ? Integer.compare(a.start, b.start) : Integer.compare(a.slot, b.slot));
+        return cues;
+    }
+
+    private boolean isShownLine(int line) {
+        List<String> lines = lyricsProcessor.getLyricsLines();
+        return line >= 0 && line < lines.size() && !lines.get(line).isEmpty();
+    }
+
+    /**
+     * @return The words of the line with their times. The words after the last mark have no time, and are shown as
+     * not sung.
+     */
+    List<Syllable> getSyllables(int line) {
+        List<Syllable> syllables = new ArrayList<>();
+        int startMark = lyricsProcessor.getStartMarkAtLine(line);
+        int endMark = lyricsProcessor.getEndMarkAtLine(line);
+        for (int mark = startMark + 1; mark <= endMark; mark++) {
+            String text = lyricsProcessor.getTextBeforeMark(mark);
+            if (text == null) continue;
+
+            String displayText;
+            if (LyricsProcessor.isSepWord(text))
+                displayText = text.substring(1); // the rest of a word, no space before it.
+            else if (LyricsProcessor.isEasternChar(text.charAt(0)) || syllables.isEmpty())
+                displayText = removeLinkQuotes(text);
+            else
+                displayText = " " + text;
+
+            boolean isTimed = mark < marks.size();
+            syllables.add(new Syllable(displayText, isTimed ? marks.get(mark - 1) : -1,
+                    isTimed ? marks.get(mark) : -1));
+        }
+        return syllables;
+    }
+
+    /**
+     * @return The text without the quotes that link eastern chars, which aren't drawn in the video either.
+     */
+    private static String removeLinkQuotes(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean isLinkQuote = c == '\'' && i > 0 && i < text.length() - 1 &&
+                    (LyricsProcessor.isEasternChar(text.charAt(i - 1)) ||
+                            LyricsProcessor.isEasternChar(text.charAt(i + 1)));
+            if (!isLinkQuote) builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The times of the first marks of the paragraphs, where the ready dots end.
+     */
+    private List<Integer> getParagraphStartTimes() {
+        List<Integer> times = new ArrayList<>();
+        if (marks.isEmpty()) return times;
+
+        times.add(marks.get(0));
+        List<Integer> paragraphEndMarks = lyricsProcessor.getParagraphEndMarks();
+        // The mark after the end of the last paragraph doesn't start a paragraph.
+        for (int i = 0; i < paragraphEndMarks.size() - 1; i++) {
+            int startMark = paragraphEndMarks.get(i) + 1;
+            if (startMark < marks.size())
+                times.add(marks.get(startMark));
+        }
+        return times;
+    }
+
+    /**
+     * @param slot 0 for the top line, 1 for the bottom line.
+     * @return The left of the baseline of the line, in pixels, the same as in the video.
+     */
+    private Point getLinePosition(int slot) {
+        int x = toDrawSize(snapshot.getPropInt("textPosX"));
+        int y = toDrawSize(snapshot.getPropInt("textPosY")) + snapshot.getPropInt("defaultFontSize");
+        if (slot == 1) {
+            x += toDrawSize(snapshot.getPropInt("indentSize"));
+            y += toDrawSize(snapshot.getPropInt("lineSpace"));
+        }
+        return new Point(x, y);
+    }
+
+    /**
+     * @return 0.01 * resolutionX * val, like the sizes in the video.
+     */
+    private int toDrawSize(int val) {
+        return (int) (val * snapshot.getPropInt("resolutionX") * 0.01);
+    }
+
+    private static int toCentiseconds(int millis) {
+        return Math.round(millis / 10f);
+    }
+
+    /**
+     * @return The color in the &HAABBGGRR form of ASS, where the alpha 00 is opaque.
+     */
+    private static String toAssColor(int argb) {
+        int alpha = 255 - (argb >>> 24);
+        return String.format(Locale.ROOT, "&H%02X%02X%02X%02X", alpha, argb & 0xFF, (argb >> 8) & 0xFF,
+                (argb >> 16) & 0xFF);
+    }
+
+    private static String toCssColor(int argb) {
+        return String.format(Locale.ROOT, "#%06X", argb & 0xFFFFFF);
+    }
+
+    private static String formatAssTime(int millis) {
+        int centiseconds = toCentiseconds(millis);
+        return String.format(Locale.ROOT, "%d:%02d:%02d.%02d", centiseconds / 360000, centiseconds / 6000 % 60,
+                centiseconds / 100 % 60, centiseconds % 100);
+    }
+
+    private static String formatVttTime(int millis) {
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60,
+                millis / 1000 % 60, millis % 1000);
+    }
+
+    /**
+     * ASS has no escapes, so the characters that start override tags are replaced.
+     */
+    private static String escapeAss(String text) {
+        return text.replace('{', '(').replace('}', ')').replace('\\', '/');
+    }
+
+    private static String escapeVtt(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * A line shown on one of the 2 places from start to end.
+     *
+     * @param slot 0 for the top line, 1 for the bottom line.
+     */
+    record Cue(int start, int end, int slot, List<Syllable> syllables) {
+    }
+
+    /**
+     * A word of a line, sung from start to end. The times are -1 if the word has no marks yet.
+     */
+    record Syllable(String text, int start, int end) {
+    }
+}
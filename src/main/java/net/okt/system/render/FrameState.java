@@ -0,0 +1,16 @@
+package net.okt.system.render;
+
+/**
+ * Everything that decides how a frame looks, got from {@link KaraokeRenderer#getFrameState(int)}. Frames with equal
+ * states are exactly the same, so a state can be used as a cheap key to find repeated frames.
+ *
+ * @param shouldDisplayText If the lyrics are displayed. If not, the lines and the wipe widths are always -1 and 0.
+ * @param topLine           The lyrics line displayed on the top.
+ * @param bottomLine        The lyrics line displayed on the bottom.
+ * @param topWipeWidth      The width of the highlighted part of the top line, in the glyph space.
+ * @param bottomWipeWidth   The width of the highlighted part of the bottom line, in the glyph space.
+ * @param dotsWidth         The width of the highlighted part of the ready dots, in pixels. -1 if the dots are hidden.
+ */
+public record FrameState(boolean shouldDisplayText, int topLine, int bottomLine, double topWipeWidth,
+                         double bottomWipeWidth, int dotsWidth) {
+}
@@ -0,0 +1,684 @@
+package net.okt.system.render;
+
+import net.okt.system.LyricsProcessor;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders the karaoke frames of a {@link ProjectSnapshot} without any AWT component.
+ * <p>
+ * The renderer doesn't keep any per-frame state. All the state of a frame is computed from the snapshot and the time,
+ * and what it caches (the line layouts, wipe tables and sprites) is never changed once created. So one renderer can
+ * render different frames on many threads at the same time, as long as each thread draws to its own image. The line
+ * layouts are also shared with the other renderers by the {@link LineLayoutCache}.
+ */
+public class KaraokeRenderer {
+    /**
+     * How the sung part of the lines is drawn.
+     */
+    public enum WipeMode {
+        /**
+         * Intersect the outline of the line with the wipe rectangle, and fill and outline the intersection. Exact, but
+         * builds and strokes new geometry for every frame.
+         */
+        INTERSECT,
+        /**
+         * Both looks of the line are rasterized once to {@link LineSprites}, and the frames just copy their pixels. No
+         * geometry is built and nothing is filled or outlined while a line is shown, and the result differs from
+         * {@link #INTERSECT} only around the wipe edge.
+         */
+        SPRITE
+    }
+
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, true);
+    private static final AffineTransform ZERO_TRANSFORM = AffineTransform.getScaleInstance(0, 0);
+    /**
+     * The pixels drawn around a dirty region, so the edges of the region are drawn the same as in a full render.
+     */
+    private static final int CLIP_GUARD = 8;
+    /**
+     * The lines a renderer keeps the sprites of. Only two lines are shown at a time, and a few more are enough for the
+     * render threads working on the frames around the line switches.
+     */
+    private static final int SPRITE_CACHE_LINES = 6;
+
+    private final ProjectSnapshot snapshot;
+    private final RenderSettings settings;
+    /**
+     * The union of the ready dots and its stroked outline. They only depend on the settings, so they are built once.
+     */
+    private final Area dotsArea;
+    private final Shape dotsOutline;
+    private final boolean fastRendering;
+    private final WipeMode wipeMode;
+    private final Map<Integer, LineLayout> lineLayouts = new ConcurrentHashMap<>();
+    private final Map<Integer, WipeTable> wipeTables = new ConcurrentHashMap<>();
+    /**
+     * The sprites of the recently shown lines, in {@link WipeMode#SPRITE}. The least recently used line is dropped.
+     */
+    private final Map<Integer, LineSprites> lineSprites = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, LineSprites> eldest) {
+                    return size() > SPRITE_CACHE_LINES;
+                }
+            });
+    /**
+     * The image each thread draws the dirty regions to, before they are copied to the frame.
+     */
+    private final ThreadLocal<BufferedImage> scratchImage = new ThreadLocal<>();
+
+    public KaraokeRenderer(ProjectSnapshot snapshot) {
+        this(snapshot, false);
+    }
+
+    /**
+     * The lines are drawn from {@link WipeMode#SPRITE sprites}, which are rasterized once at the resolution of the
+     * snapshot.
+     *
+     * @param fastRendering If the rendering hints should prefer speed to quality. For previews only.
+     */
+    public KaraokeRenderer(ProjectSnapshot snapshot, boolean fastRendering) {
+        this(snapshot, fastRendering, WipeMode.SPRITE);
+    }
+
+    /**
+     * @param fastRendering If the rendering hints should prefer speed to quality. For previews only.
+     * @param wipeMode      How the sung part of the lines is drawn.
+     */
+    public KaraokeRenderer(ProjectSnapshot snapshot, boolean fastRendering, WipeMode wipeMode) {
+        this.snapshot = snapshot;
+        this.settings = snapshot.getRenderSettings();
+        this.dotsArea = createDotsArea();
+        this.dotsOutline = settings.getDotsStroke().createStrokedShape(dotsArea);
+        this.fastRendering = fastRendering;
+        this.wipeMode = wipeMode;
+    }
+
+    /**
+     * Get the glyph vector of the passed in string.
+     * If the string contains a link word, it'll be applied the linkTransform.
+     */
+    private static GlyphVector getGlyphVector(String s, AffineTransform linkTransform, Font font) {
+        GlyphVector glyphVector = font.createGlyphVector(FRC, s);
+        int length = s.length();
+
+        for (int i = 0; i < length; i++) {
+            char currentChar = s.charAt(i);
+            if (currentChar == '\'' && i > 0 && i < length - 1) {
+                // If the left or right are eastern chars, it is a link word. Apply transforms to it.
+                if (LyricsProcessor.isEasternChar(s.charAt(i - 1)) ||
+                        LyricsProcessor.isEasternChar(s.charAt(i + 1))) {
+                    // Scale the quote to zero to make it disappear.
+                    glyphVector.setGlyphTransform(i, ZERO_TRANSFORM);
+                    i++;
+                    // The next char is the link char, apply to linkTransform.
+                    glyphVector.setGlyphTransform(i, linkTransform);
+                }
+            } else if (currentChar == '_') {
+                glyphVector.setGlyphTransform(i, ZERO_TRANSFORM);
+                i++;
+            }
+        }
+
+        return glyphVector;
+    }
+
+    /**
+     * Wrap an ARGB pixel array as an image without copying it. Drawing to the image writes to the array.
+     */
+    public static BufferedImage wrapPixels(int[] pixels, int width, int height) {
+        DataBufferInt dataBuffer = new DataBufferInt(pixels, pixels.length);
+        DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width,
+                colorModel.getMasks(), null);
+
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * @return The bytes of the images the renderer keeps while rendering frames of the size on the given number of
+     * threads: the scratch image of every thread, and in {@link WipeMode#SPRITE} the sprites of the recently shown
+     * lines.
+     */
+    public long getMemoryUsage(int width, int height, int threads) {
+        long usage = (long) threads * width * height * 4;
+        if (wipeMode == WipeMode.SPRITE) {
+            // A shown line is about the width of the frame at most, and the height of the font with its outlines.
+            int lineHeight = Math.min(height, settings.getFontDrawSize() * 2 + getStrokeMargin() * 2);
+            usage += (long) SPRITE_CACHE_LINES * 3 * width * lineHeight * 4;
+        }
+        return usage;
+    }
+
+    public ProjectSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Render the frame at the given time to the passed in ARGB pixel array. The array should hold
+     * resolutionX * resolutionY pixels.
+     */
+    public void render(int time, int[] pixels) {
+        render(time, wrapPixels(pixels, settings.getResolutionX(), settings.getResolutionY()));
+    }
+
+    /**
+     * Render the frame at the given time to the passed in image. The image should have the same size as the project
+     * resolution.
+     */
+    public void render(int time, BufferedImage image) {
+        render(getFrameState(time), image);
+    }
+
+    /**
+     * Get everything that decides how the frame at the given time looks. This is much cheaper than rendering, and if
+     * two times have equal states, their frames are exactly the same.
+     */
+    public FrameState getFrameState(int time) {
+        LyricsProcessor.TimeState state = snapshot.getLyricsProcessor().getTimeState(time,
+                settings.getDotsPeriod(), settings.getTextDisappearTime());
+
+        float readyDotsPercentage = state.readyDotsPercentage();
+        int dotsWidth = -1;
+        if (readyDotsPercentage > 0)
+            dotsWidth = (int) (readyDotsPercentage * settings.getDotsSize() * settings.getDotsNum());
+
+        // If the text is not displayed, the lines don't matter, so all these frames have the same state.
+        if (!state.shouldDisplayText())
+            return new FrameState(false, -1, -1, 0, 0, dotsWidth);
+
+        int[] displayingLines = state.displayingLines();
+        return new FrameState(
+                true,
+                displayingLines[0],
+                displayingLines[1],
+                getWipeWidth(getLineLayout(displayingLines[0]), displayingLines[0], time),
+                getWipeWidth(getLineLayout(displayingLines[1]), displayingLines[1], time),
+                dotsWidth
+        );
+    }
+
+    /**
+     * Render the frame of the given state to the passed in image. The image should have the same size as the project
+     * resolution.
+     */
+    public void render(FrameState state, BufferedImage image) {
+        render(state, image, null);
+    }
+
+    /**
+     * Update the image from the frame of the previous state to the frame of the given state, by only clearing and
+     * redrawing the regions that differ between the two. The result is the same as {@link #render(FrameState,
+     * BufferedImage)}.
+     *
+     * @param previous The state of the frame the image holds, or null if it's unknown, which redraws the whole image.
+     * @return The regions that are redrawn. See {@link #getDirtyRegions}.
+     */
+    public List<Rectangle> render(FrameState state, FrameState previous, BufferedImage image) {
+        List<Rectangle> dirtyRegions = getDirtyRegions(previous, state, image.getWidth(), image.getHeight());
+        if (dirtyRegions.isEmpty()) return dirtyRegions;
+
+        // Java2D rasterizes the outlines a bit differently within a few pixels of the clip edges, and after a
+        // translation. So every region is drawn with a guard band around it, at the same place of a scratch image, and
+        // only the region itself is copied to the frame.
+        Rectangle imageBounds = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        BufferedImage scratch = getScratchImage(image.getWidth(), image.getHeight());
+        WritableRaster raster = image.getRaster();
+        for (Rectangle region : dirtyRegions) {
+            Rectangle guarded = new Rectangle(region);
+            guarded.grow(CLIP_GUARD, CLIP_GUARD);
+            render(state, scratch, guarded.intersection(imageBounds));
+            raster.setRect(scratch.getRaster().createChild(region.x, region.y, region.width, region.height,
+                    region.x, region.y, null));
+        }
+
+        return dirtyRegions;
+    }
+
+    /**
+     * Get the regions of the image that can differ between the frames of the two states. Mostly it's only the part
+     * of a line between the two wipe positions. The whole line is included when a line is switched, and the whole
+     * dots when the dots move.
+     *
+     * @param previous The state of the previous frame, or null for the whole image.
+     * @return The regions in pixels, inside the image. Empty if the frames are the same.
+     */
+    public List<Rectangle> getDirtyRegions(FrameState previous, FrameState state, int width, int height) {
+        Rectangle imageBounds = new Rectangle(0, 0, width, height);
+        if (previous == null) return List.of(imageBounds);
+
+        List<Rectangle> regions = new ArrayList<>();
+        if (previous.dotsWidth() != state.dotsWidth())
+            regions.add(getDotsBounds());
+
+        int x = settings.getTextPosX();
+        int y = settings.getTextPosY() + settings.getDefaultFontSize();
+        addLineRegions(regions, previous.topLine(), previous.topWipeWidth(), state.topLine(), state.topWipeWidth(),
+                x, y);
+        addLineRegions(regions, previous.bottomLine(), previous.bottomWipeWidth(), state.bottomLine(),
+                state.bottomWipeWidth(), x + settings.getIndentSize(), y + settings.getLineSpace());
+
+        // Keep the regions inside the image.
+        List<Rectangle> clippedRegions = new ArrayList<>(regions.size());
+        for (Rectangle region : regions) {
+            Rectangle clipped = region.intersection(imageBounds);
+            if (!clipped.isEmpty())
+                clippedRegions.add(clipped);
+        }
+        return clippedRegions;
+    }
+
+    /**
+     * Add the regions that change on a line position, which is at (x, y) in the image.
+     */
+    private void addLineRegions(List<Rectangle> regions, int previousLine, double previousWipeWidth, int line,
+                                double wipeWidth, int x, int y) {
+        if (previousLine != line) {
+            regions.add(getLineBounds(getLineLayout(previousLine), x, y));
+            regions.add(getLineBounds(getLineLayout(line), x, y));
+            return;
+        }
+
+        // Not positive (or NaN) draws the same as 0, like in getRectangleArea.
+        double from = previousWipeWidth > 0 ? previousWipeWidth : 0;
+        double to = wipeWidth > 0 ? wipeWidth : 0;
+        if (from == to) return;
+
+        // Only the part between the two wipe positions is changed. The glyphs cut by the wipe edges are included as a
+        // whole, because the outline of the cut curves can move a bit along the whole glyph.
+        LineLayout layout = getLineLayout(line);
+        Rectangle lineBounds = getLineBounds(layout, x, y);
+        double start = Math.min(from, to), end = Math.max(from, to);
+        for (Rectangle2D glyphBounds : layout.glyphBounds) {
+            if (glyphBounds.getMinX() <= start && start <= glyphBounds.getMaxX())
+                start = Math.min(start, glyphBounds.getMinX());
+            if (glyphBounds.getMinX() <= end && end <= glyphBounds.getMaxX())
+                end = Math.max(end, glyphBounds.getMaxX());
+        }
+
+        float scale = settings.getFontDrawSize();
+        int margin = getStrokeMargin();
+        int startX = x + (int) Math.floor(start * scale) - margin;
+        int endX = x + (int) Math.ceil(end * scale) + margin;
+        regions.add(lineBounds.intersection(new Rectangle(startX, lineBounds.y, endX - startX, lineBounds.height)));
+    }
+
+    /**
+     * @return The pixels the line at (x, y) can cover, with its outlines.
+     */
+    private Rectangle getLineBounds(LineLayout layout, int x, int y) {
+        if (layout.numGlyphs == 0) return new Rectangle();
+
+        Rectangle bounds = layout.area.getBounds();
+        int margin = getStrokeMargin();
+        bounds.grow(margin, margin);
+        bounds.translate(x, y);
+        return bounds;
+    }
+
+    /**
+     * @return How far (pixels) the outlines of the lyrics can go out of the glyphs, plus a pixel for the rounding.
+     */
+    private int getStrokeMargin() {
+        return Math.max(settings.getTextStrokeWidth(), settings.getIntersectStrokeWidth()) / 2 + 2;
+    }
+
+    /**
+     * @return The pixels the ready dots can cover, with their outlines.
+     */
+    private Rectangle getDotsBounds() {
+        int dotSize = settings.getDotsSize();
+        int strokeWidth = settings.getDotsStrokeWidth();
+        Rectangle bounds = new Rectangle(settings.getDotsPosX(), settings.getDotsPosY(),
+                dotSize * settings.getDotsNum(), dotSize);
+        bounds.grow(strokeWidth / 2 + 2, strokeWidth / 2 + 2);
+        return bounds;
+    }
+
+    /**
+     * @return The scratch image of the calling thread, of the given size.
+     */
+    private BufferedImage getScratchImage(int width, int height) {
+        BufferedImage scratch = scratchImage.get();
+        if (scratch == null || scratch.getWidth() != width || scratch.getHeight() != height) {
+            scratch = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            scratchImage.set(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * @param clip The region to draw in, or null to draw the whole image.
+     */
+    private void render(FrameState state, BufferedImage image, Rectangle clip) {
+        Graphics2D imgG2d = createGraphics(image);
+        if (clip != null)
+            imgG2d.setClip(clip);
+
+        // Clear the buffered image.
+        imgG2d.setBackground(settings.getBackgroundColor());
+        imgG2d.clearRect(0, 0, image.getWidth(), image.getHeight());
+
+        // Draw ready dots.
+        if (state.dotsWidth() >= 0)
+            drawReadyDots(imgG2d, state.dotsWidth());
+
+        // translate to initial position.
+        imgG2d.translate(settings.getTextPosX(), settings.getTextPosY() + settings.getDefaultFontSize());
+
+        // Draw the string.
+        if (state.shouldDisplayText())
+            drawText(imgG2d, state);
+
+        imgG2d.dispose();
+    }
+
+    /**
+     * @return The graphics of the image, with the rendering hints of this renderer.
+     */
+    private Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D g2d = image.createGraphics();
+        if (fastRendering) {
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        } else {
+            // This setting can prevent the thick stroke artifacts.
+            g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        }
+        return g2d;
+    }
+
+    private void drawText(Graphics2D g2d, FrameState state) {
+        // The top line.
+        drawLine(g2d, state.topLine(), state.topWipeWidth());
+
+        // Translate position to the bottom line.
+        g2d.translate(settings.getIndentSize(), settings.getLineSpace());
+
+        // The bottom line.
+        drawLine(g2d, state.bottomLine(), state.bottomWipeWidth());
+    }
+
+    /**
+     * @param line The line index in the lyrics.
+     */
+    private void drawLine(Graphics2D g2d, int line, double wipeWidth) {
+        LineLayout layout = getLineLayout(line);
+        if (wipeMode == WipeMode.SPRITE) {
+            drawSprites(g2d, line, layout, wipeWidth);
+            return;
+        }
+
+        drawBase(g2d, layout);
+        drawIntersectedWipe(g2d, layout, wipeWidth);
+    }
+
+    /**
+     * Draw the line in its look before it's sung.
+     */
+    private void drawBase(Graphics2D g2d, LineLayout layout) {
+        Area fontArea = layout.area;
+
+        // base fill
+        g2d.setColor(Color.WHITE);
+        g2d.fill(fontArea);
+
+        // base outline
+        g2d.setColor(Color.BLACK);
+        g2d.fill(layout.getStrokedOutline(settings.getTextStroke()));
+    }
+
+    /**
+     * Draw the sung part of the line as the intersection of the line outline and the wipe rectangle.
+     */
+    private void drawIntersectedWipe(Graphics2D g2d, LineLayout layout, double wipeWidth) {
+        Area intersectArea = new Area(layout.area);
+        intersectArea.intersect(getRectangleArea(layout, wipeWidth));
+
+        // intersect area outline
+        g2d.setColor(settings.getIntersectStrokeColor());
+        g2d.setStroke(settings.getIntersectStroke());
+        g2d.draw(intersectArea);
+
+        // intersect area fill
+        g2d.setColor(settings.getTextColor());
+        g2d.fill(intersectArea);
+    }
+
+    /**
+     * Draw the line by copying the pixels of its sprites: the highlighted look up to the wipe, the strip of the
+     * outline along the wipe edge, and the base look after them. The outline of an intersection also goes along the
+     * wipe edge, which shows as a strip of half the stroke width after the edge, and the strip is where this differs
+     * from {@link #drawIntersectedWipe}: the cut is stroked there, with its joins where it meets the glyphs.
+     */
+    private void drawSprites(Graphics2D g2d, int line, LineLayout layout, double wipeWidth) {
+        if (layout.numGlyphs == 0) return;
+
+        LineSprites sprites = getLineSprites(line, layout);
+        int width = sprites.base.getWidth();
+        int height = sprites.base.getHeight();
+        int x = sprites.x, y = sprites.y;
+
+        // Not positive (or NaN) means there's no progress on the line.
+        int sungWidth = 0, edgeWidth = 0;
+        if (wipeWidth > 0) {
+            int wipeX = (int) Math.round(wipeWidth * settings.getFontDrawSize()) - x;
+            sungWidth = Math.max(0, Math.min(width, wipeX));
+            edgeWidth = Math.max(0, Math.min(width, wipeX + settings.getIntersectStrokeWidth() / 2)) - sungWidth;
+        }
+
+        // The highlighted pixels are drawn over the base ones, like the outlines are.
+        g2d.drawImage(sprites.base, x, y, null);
+        if (sungWidth > 0)
+            g2d.drawImage(sprites.highlighted, x, y, x + sungWidth, y + height, 0, 0, sungWidth, height, null);
+        if (edgeWidth > 0) {
+            int edgeX = x + sungWidth;
+            g2d.drawImage(sprites.edge, edgeX, y, edgeX + edgeWidth, y + height, sungWidth, 0, sungWidth + edgeWidth,
+                    height, null);
+        }
+    }
+
+    /**
+     * @param line The line index in the lyrics.
+     * @return The sprites of the given line, which are rasterized if the line isn't one of the recently shown ones.
+     */
+    private LineSprites getLineSprites(int line, LineLayout layout) {
+        LineSprites sprites = lineSprites.get(line);
+        if (sprites != null) return sprites;
+
+        // Rasterized without holding the lock, so the threads drawing the other line don't wait for this one.
+        sprites = createLineSprites(layout);
+        LineSprites cached = lineSprites.putIfAbsent(line, sprites);
+        return cached != null ? cached : sprites;
+    }
+
+    private LineSprites createLineSprites(LineLayout layout) {
+        Rectangle bounds = layout.area.getBounds();
+        int margin = getStrokeMargin();
+        bounds.grow(margin, margin);
+        LineSprites sprites = new LineSprites(bounds);
+
+        Graphics2D baseG2d = createGraphics(sprites.base);
+        baseG2d.translate(-sprites.x, -sprites.y);
+        drawBase(baseG2d, layout);
+        baseG2d.dispose();
+
+        // The sprites are only rasterized once, so they are stroked the same way as the intersections.
+        Stroke intersectStroke = settings.getIntersectStroke();
+        Color intersectStrokeColor = settings.getIntersectStrokeColor();
+
+        Graphics2D highlightedG2d = createGraphics(sprites.highlighted);
+        highlightedG2d.translate(-sprites.x, -sprites.y);
+        highlightedG2d.setColor(intersectStrokeColor);
+        highlightedG2d.setStroke(intersectStroke);
+        highlightedG2d.draw(layout.area);
+        highlightedG2d.setColor(settings.getTextColor());
+        highlightedG2d.fill(layout.area);
+        highlightedG2d.dispose();
+
+        Graphics2D edgeG2d = createGraphics(sprites.edge);
+        edgeG2d.translate(-sprites.x, -sprites.y);
+        edgeG2d.setColor(intersectStrokeColor);
+        edgeG2d.fill(layout.area);
+        edgeG2d.setStroke(intersectStroke);
+        edgeG2d.draw(layout.area);
+        edgeG2d.dispose();
+
+        return sprites;
+    }
+
+    /**
+     * Build the layouts of all the lines on a background thread, so the frames don't have to wait for them when the
+     * lines are first shown. The layouts are kept by the shared {@link LineLayoutCache}, so the next renderers of the
+     * project get the lines that haven't changed from there. The prefetch of the last renderer is replaced, so only the
+     * newest snapshot is built.
+     */
+    public void prefetchLineLayouts() {
+        List<String> lyricsLines = snapshot.getLyricsProcessor().getLyricsLines();
+        if (lyricsLines == null) return;
+
+        LineLayoutCache.prefetch(lyricsLines.size(), this::getLineLayout);
+    }
+
+    /**
+     * @param line The line index in the lyrics.
+     * @return The layout of the given line. Taken from the {@link LineLayoutCache} at the first call for each line.
+     */
+    private LineLayout getLineLayout(int line) {
+        List<String> lyricsLines = snapshot.getLyricsProcessor().getLyricsLines();
+        if (lyricsLines == null || line == -1 || line >= lyricsLines.size())
+            return LineLayout.EMPTY;
+
+        return lineLayouts.computeIfAbsent(line, l -> {
+            LineLayoutCache.Key key = new LineLayoutCache.Key(lyricsLines.get(l), snapshot.getFont(),
+                    settings.getDefaultFontSize(), settings.getLinkedFontSize(), settings.getFontDrawSize());
+            return LineLayoutCache.SHARED.get(key, KaraokeRenderer::createLineLayout);
+        });
+    }
+
+    private static LineLayout createLineLayout(LineLayoutCache.Key key) {
+        float linkScale = (float) key.linkedFontSize() / key.defaultFontSize();
+        AffineTransform linkScaleTransform = AffineTransform.getScaleInstance(linkScale, linkScale);
+        GlyphVector glyphVector = getGlyphVector(key.text(), linkScaleTransform, key.font());
+
+        return new LineLayout(glyphVector, key.drawSize());
+    }
+
+    /**
+     * Get the rectangle area that is used to intersect with the line area.
+     *
+     * @param layout    The layout of the line.
+     * @param wipeWidth The width got from {@link #getWipeWidth(LineLayout, int, int)}.
+     * @return The rectangle as an area.
+     */
+    private Area getRectangleArea(LineLayout layout, double wipeWidth) {
+        // Not positive (or NaN) means there's no progress on the line.
+        if (!(wipeWidth > 0)) return new Area();
+
+        Rectangle2D rect = new Rectangle2D.Double(
+                0,
+                -layout.lineHeight,
+                wipeWidth,
+                layout.lineHeight * 2
+        ); // the y and the height are actually rough numbers, but can make sure the line is well-covered.
+
+        Area area = new Area(rect);
+        area.transform(getDefaultScaleTransform());
+        return area;
+    }
+
+    /**
+     * Get the width of the rectangle that is used to intersect with the line area, in the glyph space.
+     *
+     * @param layout The layout of the line.
+     * @param line   The line index in the lyrics.
+     * @param time   The current play time.
+     * @return The width. 0 if there's no progress on the line.
+     */
+    private double getWipeWidth(LineLayout layout, int line, int time) {
+        var marks = snapshot.getMarks();
+        WipeTable wipeTable = getWipeTable(layout, line);
+        int lineStartMark = wipeTable.startMark;
+        if (lineStartMark >= marks.size() || layout.numGlyphs == 0) return 0;
+
+        // If the time is before the line start mark,
+        // there should not be any progress of rectangle, return empty area.
+        if (time < marks.get(lineStartMark)) return 0;
+
+        int nextMark = snapshot.getLyricsProcessor().getNextMark(time); // the nearest mark after time
+        int nextMarkTime = nextMark < marks.size() ? marks.get(nextMark) : Integer.MAX_VALUE;
+        int lastMarkTime = nextMark == 0 ? 0 : marks.get(nextMark - 1);
+
+        // The percentage of how much the end glyph should be filled.
+        float endPercentage = (float) (time - lastMarkTime) / (nextMarkTime - lastMarkTime);
+        return wipeTable.getWipeWidth(nextMark, endPercentage);
+    }
+
+    /**
+     * @param line The line index in the lyrics.
+     * @return The wipe table of the given line. Created at the first call for each line.
+     */
+    private WipeTable getWipeTable(LineLayout layout, int line) {
+        if (layout.numGlyphs == 0) return WipeTable.EMPTY;
+        return wipeTables.computeIfAbsent(line, l -> WipeTable.create(layout, snapshot.getLyricsProcessor(), l));
+    }
+
+    private AffineTransform getDefaultScaleTransform() {
+        float defaultScale = settings.getFontDrawSize();
+        return AffineTransform.getScaleInstance(defaultScale, defaultScale);
+    }
+
+    /**
+     * @return The union of all the ready dots.
+     */
+    private Area createDotsArea() {
+        int dotSize = settings.getDotsSize();
+        int dotsNum = settings.getDotsNum();
+        int startX = settings.getDotsPosX();
+        int startY = settings.getDotsPosY();
+
+        Area arcsArea = new Area();
+
+        // Dot shapes.
+        for (int i = 0, x = startX; i < dotsNum; i++, x += dotSize) {
+            // Get the shape.
+            Shape arcShape = new Arc2D.Float(x, startY, dotSize, dotSize, 0, 360, Arc2D.OPEN);
+
+            // Add to arcsArea.
+            arcsArea.add(new Area(arcShape));
+        }
+
+        arcsArea.getBounds2D(); // compute the cached bounds now, so no thread writes it later.
+        return arcsArea;
+    }
+
+    /**
+     * @param width The width of the scrolling rect over the dots.
+     */
+    private void drawReadyDots(Graphics2D g2d, int width) {
+        // Scrolling rect. It's on whole pixels, so clipping to it draws the same as intersecting the dots with it.
+        Rectangle rect = new Rectangle(settings.getDotsPosX(), settings.getDotsPosY(), width, settings.getDotsSize());
+
+        // Draw the part of the dots in the rect.
+        Shape clip = g2d.getClip();
+        g2d.clip(rect);
+        g2d.setColor(settings.getDotsColor());
+        g2d.fill(dotsArea);
+        g2d.setClip(clip);
+
+        // Draw arc bounds.
+        g2d.setColor(Color.BLACK);
+        g2d.fill(dotsOutline);
+    }
+}
@@ -0,0 +1,85 @@
+package net.okt.system.render;
+
+import java.awt.*;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The geometry of a lyrics line. Everything the renderer needs from the glyph vector is computed in the constructor,
+ * so a layout is never changed after that and can be read by many threads. Only the stroked outlines are added later,
+ * to a concurrent map.
+ */
+class LineLayout {
+    static final LineLayout EMPTY = new LineLayout();
+    /**
+     * The stroked outlines a layout keeps. A line is drawn with two strokes, and the rest are the ones a changing
+     * stroke setting has gone through.
+     */
+    private static final int MAX_STROKED_OUTLINES = 4;
+
+    /**
+     * The outline of the whole line, in the draw size.
+     */
+    final Area area;
+    final int numGlyphs;
+    /**
+     * The x of each glyph got from an {@link Area} of the glyph outline, in the glyph space. The bounds of the glyph
+     * outline itself would be wrong in some particular fonts, and turning it to an Area object solves the problem.
+     * (See #52.)
+     */
+    final double[] glyphAreaX;
+    /**
+     * The bounds of each glyph outline, in the glyph space.
+     */
+    final Rectangle2D[] glyphBounds;
+    /**
+     * The height of the whole line, in the glyph space.
+     */
+    final double lineHeight;
+    private final Map<Stroke, Shape> strokedOutlines = new ConcurrentHashMap<>();
+
+    private LineLayout() {
+        area = new Area();
+        numGlyphs = 0;
+        glyphAreaX = new double[0];
+        glyphBounds = new Rectangle2D[0];
+        lineHeight = 0;
+    }
+
+    LineLayout(GlyphVector glyphVector, float drawScale) {
+        numGlyphs = glyphVector.getNumGlyphs();
+        glyphAreaX = new double[numGlyphs];
+        glyphBounds = new Rectangle2D[numGlyphs];
+        for (int i = 0; i < numGlyphs; i++) {
+            Shape glyph = glyphVector.getGlyphOutline(i);
+            glyphAreaX[i] = new Area(glyph).getBounds2D().getX();
+            glyphBounds[i] = glyph.getBounds2D();
+        }
+
+        Shape outline = glyphVector.getOutline();
+        lineHeight = outline.getBounds2D().getHeight();
+
+        area = new Area(outline);
+        area.transform(AffineTransform.getScaleInstance(drawScale, drawScale));
+        area.getBounds2D(); // compute the cached bounds now, so no thread writes it later.
+    }
+
+    /**
+     * Get the outline of {@link #area} drawn by the stroke as a shape, so drawing the outline is only a fill. Stroking
+     * a thick outline costs about as much as all the rest of a frame, and the result is the same every frame.
+     */
+    Shape getStrokedOutline(Stroke stroke) {
+        Shape outline = strokedOutlines.get(stroke);
+        if (outline != null) return outline;
+
+        if (strokedOutlines.size() >= MAX_STROKED_OUTLINES)
+            strokedOutlines.clear();
+        outline = stroke.createStrokedShape(area);
+        Shape cached = strokedOutlines.putIfAbsent(stroke, outline);
+        return cached != null ? cached : outline;
+    }
+}
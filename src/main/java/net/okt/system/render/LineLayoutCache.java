@@ -0,0 +1,97 @@
+package net.okt.system.render;
+
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * A least recently used cache of {@link LineLayout}s, shared by all the renderers. A renderer is created for every
+ * change of the project, but most changes, like a moved mark or another color, don't change the geometry of the lines.
+ * So the layouts are keyed by only what they are built from, and a new renderer finds the lines it has in common with
+ * the last one here instead of building them again. The layouts of changed lines are never looked up again, and are
+ * dropped when the cache is full.
+ */
+class LineLayoutCache {
+    /**
+     * The cache of all the renderers. Big enough for the lines of a few songs.
+     */
+    static final LineLayoutCache SHARED = new LineLayoutCache(512);
+    /**
+     * Runs the {@link #prefetch(int, IntConsumer)}s. At most one waits, and a newer one takes its place.
+     */
+    private static final ExecutorService PREFETCHER = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), r -> {
+        Thread thread = new Thread(r, "LineLayoutCache-prefetcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    private static final AtomicInteger prefetchGeneration = new AtomicInteger();
+
+    private final Map<Key, LineLayout> layouts;
+
+    LineLayoutCache(int capacity) {
+        // An access ordered map, which drops the least recently used layout.
+        this.layouts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, LineLayout> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the layout of the key, or build it with the factory if it isn't cached. The layout is built without holding
+     * the lock, so threads building different lines don't wait for each other. Two threads may build the same line at
+     * the same time, in which case both get the first one cached.
+     */
+    LineLayout get(Key key, Function<Key, LineLayout> factory) {
+        synchronized (layouts) {
+            LineLayout layout = layouts.get(key);
+            if (layout != null) return layout;
+        }
+
+        LineLayout layout = factory.apply(key);
+        synchronized (layouts) {
+            LineLayout cached = layouts.putIfAbsent(key, layout);
+            return cached != null ? cached : layout;
+        }
+    }
+
+    /**
+     * Build the layouts of lines one by one, in the background. A prefetch replaces the last one, since the lines of an
+     * older snapshot won't be shown: a waiting prefetch is dropped, and a running one stops before its next line.
+     *
+     * @param lineCount The lines 0 to lineCount - 1 are built.
+     * @param buildLine Builds the layout of a line.
+     */
+    static void prefetch(int lineCount, IntConsumer buildLine) {
+        int generation = prefetchGeneration.incrementAndGet();
+        PREFETCHER.execute(() -> {
+            for (int i = 0; i < lineCount && prefetchGeneration.get() == generation; i++)
+                buildLine.accept(i);
+        });
+    }
+
+    int size() {
+        synchronized (layouts) {
+            return layouts.size();
+        }
+    }
+
+    /**
+     * Everything a line layout is built from.
+     *
+     * @param font     The font the glyph vector is created with.
+     * @param drawSize The pixels of the default font size at the resolution of the project.
+     */
+    record Key(String text, Font font, int defaultFontSize, int linkedFontSize, int drawSize) {
+    }
+}
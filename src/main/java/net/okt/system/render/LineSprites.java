@@ -0,0 +1,42 @@
+package net.okt.system.render;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The two looks of a lyrics line rasterized once: the base look, and the highlighted look the wipe turns it to. With
+ * them a frame is drawn by copying the highlighted pixels up to the wipe and the base pixels after it, instead of
+ * filling and outlining the line again.
+ * <p>
+ * The images are only drawn from after they are created, so the sprites can be shared by the rendering threads.
+ */
+class LineSprites {
+    /**
+     * The position of the images relative to the origin of the line, in pixels.
+     */
+    final int x, y;
+    /**
+     * The line in white with the black outline.
+     */
+    final BufferedImage base;
+    /**
+     * The line in the text color with the intersect outline.
+     */
+    final BufferedImage highlighted;
+    /**
+     * The line filled with the intersect stroke color. An intersection is outlined along the wipe edge too, which
+     * shows as a strip of half the stroke width after the wipe, and this is what the strip is copied from.
+     */
+    final BufferedImage edge;
+
+    /**
+     * @param bounds The pixels the line covers with its outlines, relative to the origin of the line.
+     */
+    LineSprites(Rectangle bounds) {
+        x = bounds.x;
+        y = bounds.y;
+        base = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        highlighted = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        edge = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+    }
+}
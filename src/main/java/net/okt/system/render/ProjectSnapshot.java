@@ -0,0 +1,117 @@
+package net.okt.system.render;
+
+import net.okt.system.LyricsProcessor;
+import net.okt.system.SaveLoadManager;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An immutable copy of everything needed to render a project: the properties, the marks, the lyrics and the font.
+ * Changing the {@link SaveLoadManager} after the snapshot is taken doesn't affect it, so a snapshot can be shared by
+ * any number of threads.
+ */
+public class ProjectSnapshot {
+    private final Map<String, String> props;
+    private final List<Integer> marks;
+    private final Font font;
+    private final RenderSettings renderSettings;
+    private final LyricsProcessor lyricsProcessor;
+    /**
+     * The {@link SaveLoadManager#getPropsVersion()} the snapshot is taken at. -1 if not taken from a manager.
+     */
+    private final int propsVersion;
+
+    public ProjectSnapshot(Map<String, String> props, List<Integer> marks, Font font) {
+        this(props, marks, font, null, -1);
+    }
+
+    /**
+     * @param renderSettings The settings of the properties, or null to parse them from the properties.
+     */
+    private ProjectSnapshot(Map<String, String> props, List<Integer> marks, Font font, RenderSettings renderSettings,
+                            int propsVersion) {
+        this.props = Map.copyOf(props);
+        this.marks = List.copyOf(marks);
+        this.font = font;
+        this.renderSettings = renderSettings != null ? renderSettings : new RenderSettings(this.props);
+        this.propsVersion = propsVersion;
+
+        this.lyricsProcessor = new LyricsProcessor(this.marks);
+        String lyrics = this.props.get("text");
+        if (lyrics != null)
+            lyricsProcessor.setLyrics(lyrics);
+    }
+
+    /**
+     * Take a snapshot of the current state of the given manager.
+     *
+     * @param font The font to render the lyrics. Its size is ignored.
+     */
+    public static ProjectSnapshot of(SaveLoadManager saveLoadManager, Font font) {
+        // The settings are the ones the manager has already parsed.
+        return new ProjectSnapshot(saveLoadManager.copyProps(), saveLoadManager.getMarks(), font,
+                saveLoadManager.getRenderSettings(), saveLoadManager.getPropsVersion());
+    }
+
+    /**
+     * @return A copy of this snapshot with some properties replaced. This snapshot is not changed.
+     */
+    public ProjectSnapshot withProps(Map<String, String> changedProps) {
+        Map<String, String> newProps = new HashMap<>(props);
+        newProps.putAll(changedProps);
+        return new ProjectSnapshot(newProps, marks, font);
+    }
+
+    /**
+     * @return If nothing has changed in the manager and the font since this snapshot is taken.
+     */
+    public boolean isUpToDate(SaveLoadManager saveLoadManager, Font font) {
+        return propsVersion == saveLoadManager.getPropsVersion() &&
+                this.font.equals(font) &&
+                marks.equals(saveLoadManager.getMarks());
+    }
+
+    public String getProp(String key) {
+        return props.get(key);
+    }
+
+    /**
+     * @return The keys of all the properties, sorted.
+     */
+    public SortedSet<String> getPropKeys() {
+        return new TreeSet<>(props.keySet());
+    }
+
+    public int getPropInt(String key) {
+        String prop = getProp(key);
+        if (prop == null) return -1;
+        return Integer.parseInt(prop);
+    }
+
+    public List<Integer> getMarks() {
+        return marks;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * @return The parsed properties the frames are rendered with.
+     */
+    public RenderSettings getRenderSettings() {
+        return renderSettings;
+    }
+
+    /**
+     * @return The lyrics processor of the snapshot lyrics. Only the read-only queries should be used on it.
+     */
+    public LyricsProcessor getLyricsProcessor() {
+        return lyricsProcessor;
+    }
+}
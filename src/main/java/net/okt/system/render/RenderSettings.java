@@ -0,0 +1,194 @@
+package net.okt.system.render;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The properties that decide how the frames look, parsed once. The renderer reads them for every frame, so they are
+ * kept as ints, colors and strokes instead of being looked up and parsed from the property strings each time.
+ * <p>
+ * The positions and sizes are in pixels at the project resolution, the same as {@code toDrawSize} gives, while the
+ * font sizes are kept as they are in the properties. The settings are immutable, and strokes and colors are too, so
+ * they can be shared by any number of threads.
+ */
+public class RenderSettings {
+    /**
+     * The properties the settings are parsed from. The other properties, like the text, don't change the settings.
+     */
+    public static final Set<String> PROP_KEYS = Set.of("backgroundColor", "defaultFontSize", "dotsColor", "dotsNum",
+            "dotsPeriod", "dotsPosX", "dotsPosY", "dotsSize", "dotsStroke", "indentSize", "intersectStroke",
+            "intersectStrokeColor", "lineSpace", "linkedFontSize", "resolutionX", "resolutionY", "textColor",
+            "textDisappearTime", "textPosX", "textPosY", "textStroke");
+
+    private final int resolutionX, resolutionY;
+    private final int defaultFontSize, linkedFontSize;
+    /**
+     * The pixels of the default font size.
+     */
+    private final int fontDrawSize;
+    private final int textPosX, textPosY, indentSize, lineSpace;
+    private final int dotsPosX, dotsPosY, dotsSize, dotsNum;
+    private final int dotsPeriod, textDisappearTime;
+    private final int textStrokeWidth, intersectStrokeWidth, dotsStrokeWidth;
+    private final Stroke textStroke, intersectStroke, dotsStroke;
+    private final Color backgroundColor, textColor, intersectStrokeColor, dotsColor;
+
+    /**
+     * @param props The project properties. Missing ones are taken as -1, like {@link ProjectSnapshot#getPropInt}.
+     */
+    public RenderSettings(Map<String, String> props) {
+        resolutionX = getInt(props, "resolutionX");
+        resolutionY = getInt(props, "resolutionY");
+        defaultFontSize = getInt(props, "defaultFontSize");
+        linkedFontSize = getInt(props, "linkedFontSize");
+        fontDrawSize = toDrawSize(defaultFontSize);
+
+        textPosX = toDrawSize(getInt(props, "textPosX"));
+        textPosY = toDrawSize(getInt(props, "textPosY"));
+        indentSize = toDrawSize(getInt(props, "indentSize"));
+        lineSpace = toDrawSize(getInt(props, "lineSpace"));
+
+        dotsPosX = toDrawSize(getInt(props, "dotsPosX"));
+        dotsPosY = toDrawSize(getInt(props, "dotsPosY"));
+        dotsSize = toDrawSize(getInt(props, "dotsSize"));
+        dotsNum = getInt(props, "dotsNum");
+        dotsPeriod = getInt(props, "dotsPeriod");
+        textDisappearTime = getInt(props, "textDisappearTime");
+
+        // The strokes are in 1% of the draw size.
+        textStrokeWidth = (int) (toDrawSize(getInt(props, "textStroke")) * 0.01);
+        intersectStrokeWidth = (int) (toDrawSize(getInt(props, "intersectStroke")) * 0.01);
+        dotsStrokeWidth = (int) (toDrawSize(getInt(props, "dotsStroke")) * 0.01);
+        textStroke = new BasicStroke(textStrokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+        intersectStroke = new BasicStroke(intersectStrokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+        dotsStroke = new BasicStroke(dotsStrokeWidth);
+
+        backgroundColor = new Color(getInt(props, "backgroundColor"), true);
+        textColor = new Color(getInt(props, "textColor"));
+        intersectStrokeColor = new Color(getInt(props, "intersectStrokeColor"));
+        dotsColor = new Color(getInt(props, "dotsColor"));
+    }
+
+    private static int getInt(Map<String, String> props, String key) {
+        String prop = props.get(key);
+        if (prop == null) return -1;
+        return Integer.parseInt(prop);
+    }
+
+    /**
+     * @return 0.01 * resolutionX * val
+     */
+    public int toDrawSize(int val) {
+        return (int) (val * resolutionX * 0.01);
+    }
+
+    public int getResolutionX() {
+        return resolutionX;
+    }
+
+    public int getResolutionY() {
+        return resolutionY;
+    }
+
+    public int getDefaultFontSize() {
+        return defaultFontSize;
+    }
+
+    public int getLinkedFontSize() {
+        return linkedFontSize;
+    }
+
+    /**
+     * @return The pixels of the default font size, which is the scale of the glyph space.
+     */
+    public int getFontDrawSize() {
+        return fontDrawSize;
+    }
+
+    public int getTextPosX() {
+        return textPosX;
+    }
+
+    public int getTextPosY() {
+        return textPosY;
+    }
+
+    public int getIndentSize() {
+        return indentSize;
+    }
+
+    public int getLineSpace() {
+        return lineSpace;
+    }
+
+    public int getDotsPosX() {
+        return dotsPosX;
+    }
+
+    public int getDotsPosY() {
+        return dotsPosY;
+    }
+
+    public int getDotsSize() {
+        return dotsSize;
+    }
+
+    public int getDotsNum() {
+        return dotsNum;
+    }
+
+    public int getDotsPeriod() {
+        return dotsPeriod;
+    }
+
+    public int getTextDisappearTime() {
+        return textDisappearTime;
+    }
+
+    public int getTextStrokeWidth() {
+        return textStrokeWidth;
+    }
+
+    public int getIntersectStrokeWidth() {
+        return intersectStrokeWidth;
+    }
+
+    public int getDotsStrokeWidth() {
+        return dotsStrokeWidth;
+    }
+
+    /**
+     * @return The outline of the lyrics before they are sung.
+     */
+    public Stroke getTextStroke() {
+        return textStroke;
+    }
+
+    /**
+     * @return The outline of the sung part of the lyrics.
+     */
+    public Stroke getIntersectStroke() {
+        return intersectStroke;
+    }
+
+    public Stroke getDotsStroke() {
+        return dotsStroke;
+    }
+
+    public Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public Color getTextColor() {
+        return textColor;
+    }
+
+    public Color getIntersectStrokeColor() {
+        return intersectStrokeColor;
+    }
+
+    public Color getDotsColor() {
+        return dotsColor;
+    }
+}
@@ -0,0 +1,123 @@
+package net.okt.system.render;
+
+import net.okt.system.LyricsProcessor;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Where the wipe of a line goes between each pair of marks. The words and glyphs a mark covers only depend on the
+ * lyrics and the line layout, so they are counted once for the line, and the wipe width of a frame is just a look-up
+ * of the next mark and an interpolation by the time.
+ */
+class WipeTable {
+    static final WipeTable EMPTY = new WipeTable(0, new double[]{0}, new double[]{0});
+
+    /**
+     * The mark the line starts at.
+     */
+    final int startMark;
+    /**
+     * The x the wipe is at when the mark before each mark is reached, in the glyph space. Indexed by the mark minus
+     * {@link #startMark}, where the last entry holds for all the marks after it.
+     */
+    private final double[] startX;
+    /**
+     * How far the wipe goes from {@link #startX} until each mark is reached.
+     */
+    private final double[] widths;
+
+    private WipeTable(int startMark, double[] startX, double[] widths) {
+        this.startMark = startMark;
+        this.startX = startX;
+        this.widths = widths;
+    }
+
+    /**
+     * Count the glyphs before each mark of the line, the same way the wipe goes through the words.
+     *
+     * @param line The line index in the lyrics.
+     */
+    static WipeTable create(LineLayout layout, LyricsProcessor lyricsProcessor, int line) {
+        if (layout.numGlyphs == 0) return EMPTY;
+
+        int startMark = lyricsProcessor.getStartMarkAtLine(line);
+        // There's no word after the max mark number, so the table always ends before the mark after it.
+        int maxEntries = Math.max(2, lyricsProcessor.getMaxMarkNumber() - startMark + 2);
+        double[] startX = new double[maxEntries];
+        double[] widths = new double[maxEntries];
+
+        int numFullGlyph = 0; // the number of glyphs that should be full-filled before the mark.
+        int entries = 0;
+        for (int mark = startMark; entries < maxEntries; mark++) {
+            int entry = entries++;
+            if (numFullGlyph >= layout.numGlyphs) {
+                // This line should be whole-line-filled, for this mark and all the marks after it.
+                Rectangle2D endBounds = layout.glyphBounds[layout.numGlyphs - 1];
+                startX[entry] = endBounds.getX() + endBounds.getWidth();
+                break;
+            }
+
+            // The end glyph refers to the glyph that should be filled but not 100%, and it is the one right after the
+            // last full-filled glyph.
+            int endGlyph = numFullGlyph;
+
+            // The string the end glyph is in.
+            String endString = lyricsProcessor.getTextBeforeMark(mark);
+            int endStringLength;
+            if (endString == null) {
+                endStringLength = 0;
+            } else {
+                if (LyricsProcessor.isLinkWord(endString))
+                    endStringLength = endString.length() + 1; // A link word should add 1 for the symbol "'".
+                else if (LyricsProcessor.isSepWord(endString))
+                    endStringLength = endString.length() - 1; // A sep word should minus 1 for the symbol "_".
+                else
+                    endStringLength = endString.length(); // Normal word.
+            }
+
+            // The end of this word. For example, "ab cde fg", if the end glyph is "c", the end bounds are of "e".
+            int endBoundsGlyph = Math.min(layout.numGlyphs - 1, Math.max(0, endGlyph + endStringLength - 1));
+            startX[entry] = layout.glyphAreaX[endGlyph];
+            widths[entry] = layout.glyphBounds[endBoundsGlyph].getMaxX() - startX[entry];
+
+            // The marks after this one have its word full-filled. The text before the start mark is of the last line.
+            if (mark == startMark) continue;
+
+            // Without a word before the mark, there's no progress on the line at the marks after it.
+            if (endString == null) {
+                entries++; // the entry is left at 0.
+                break;
+            }
+
+            if (LyricsProcessor.isEasternChar(endString.charAt(0))) { // eastern
+                // If it's an eastern word, it should be either a single word or a link word.
+                // If it's a link word, remember to add 1 glyph num for the symbol "'".
+                // (The word "一'二" displays as "一二" in textBeforeMark, but actual length is 3.)
+                numFullGlyph += endString.length() == 2 ? 3 : 1;
+            } else { // western
+                // If it's a western word, it should be either a single word or a sep word.
+                if (endString.charAt(0) == '_') // if is sep word.
+                    numFullGlyph += endString.length(); // plus 1 space and minus 1 underscore.
+                else
+                    numFullGlyph += endString.length() + 1; // plus 1 space, or 1 underscore.
+
+                // Take the line "aaa bb_cc ddd" for example, we should add "aaa ", "bb_", "cc "... in order.
+            }
+        }
+
+        return new WipeTable(startMark, Arrays.copyOf(startX, entries), Arrays.copyOf(widths, entries));
+    }
+
+    /**
+     * @param nextMark The nearest mark after the time.
+     * @param progress How far the time is from the mark before the next mark to the next mark, from 0 to 1.
+     * @return The width of the wipe, in the glyph space.
+     */
+    double getWipeWidth(int nextMark, float progress) {
+        int entry = Math.max(0, Math.min(startX.length - 1, nextMark - startMark));
+        // A full line doesn't move, even at the NaN progress of two marks at the same time.
+        if (widths[entry] == 0) return startX[entry];
+        return startX[entry] + progress * widths[entry];
+    }
+}
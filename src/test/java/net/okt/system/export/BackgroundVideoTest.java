@@ -0,0 +1,26 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackgroundVideoTest {
+    /**
+     * Seeking past the end of a background that doesn't loop should give its last frame, not nothing.
+     */
+    @Test
+    void seekPastEndTest() {
+        long length = 10_000_000; // 10s
+        long framePeriod = 40_000; // 25 fps
+
+        assertEquals(0, BackgroundVideo.getSeekTime(0, length, framePeriod));
+        assertEquals(5_000_000, BackgroundVideo.getSeekTime(5_000_000, length, framePeriod));
+        assertEquals(length - framePeriod, BackgroundVideo.getSeekTime(length - framePeriod, length, framePeriod));
+        assertEquals(length - framePeriod, BackgroundVideo.getSeekTime(length, length, framePeriod));
+        assertEquals(length - framePeriod, BackgroundVideo.getSeekTime(60_000_000, length, framePeriod));
+
+        // Shorter than a frame, and an unknown length.
+        assertEquals(0, BackgroundVideo.getSeekTime(60_000_000, 20_000, framePeriod));
+        assertEquals(60_000_000, BackgroundVideo.getSeekTime(60_000_000, 0, framePeriod));
+    }
+}
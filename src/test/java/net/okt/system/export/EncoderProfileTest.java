@@ -0,0 +1,30 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncoderProfileTest {
+    @Test
+    void optionsTest() {
+        EncoderProfile karaoke = EncoderProfile.getBuiltIn("Karaoke");
+        assertNotNull(karaoke);
+        assertEquals("preset=medium,crf=20,tune=animation,gop=10,pix_fmt=yuv420p", karaoke.toOptions());
+
+        // Changed options are kept, an empty value goes back to the encoder default.
+        EncoderProfile changed = karaoke.withOptions("crf=18, threads=4,tune=");
+        assertEquals(18, changed.crf());
+        assertEquals(4, changed.threads());
+        assertNull(changed.tune());
+        assertEquals("medium", changed.preset());
+
+        // A profile stored in a project is read back the same.
+        assertEquals(changed, EncoderProfile.fromProps(changed.name(), changed.toOptions()));
+        assertEquals(EncoderProfile.DEFAULT, EncoderProfile.fromProps(null, null));
+        assertFalse(EncoderProfile.DEFAULT.isConstantQuality());
+
+        assertThrows(IllegalArgumentException.class, () -> karaoke.withOptions("crf=100"));
+        assertThrows(IllegalArgumentException.class, () -> karaoke.withOptions("bframes=3"));
+        assertThrows(IllegalArgumentException.class, () -> karaoke.withOptions("gop"));
+    }
+}
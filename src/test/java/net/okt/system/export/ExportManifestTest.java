@@ -0,0 +1,95 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportManifestTest {
+    private static final int[] SEGMENT_STARTS = {0, 100, 250};
+
+    /**
+     * A manifest loaded with the same key should remember the complete segments, and keep its own segments.
+     */
+    @Test
+    void resumeTest() throws IOException {
+        File dir = new File(Files.createTempDirectory("okt-manifest").toFile(), "out.mp4.parts");
+        ExportManifest manifest = ExportManifest.loadOrCreate(dir, "key", "mp4", SEGMENT_STARTS, 300);
+        assertEquals(0, manifest.getCompleteSegments());
+
+        Files.writeString(manifest.getSegmentFile(1).toPath(), "segment 1");
+        manifest.markComplete(1);
+        Files.writeString(manifest.getSegmentFile(2).toPath(), "unfinished");
+        manifest.deleteIncompleteSegments();
+        assertFalse(manifest.getSegmentFile(2).exists());
+
+        ExportManifest resumed = ExportManifest.loadOrCreate(dir, "key", "mp4", new int[]{0, 150}, 300);
+        assertEquals(3, resumed.getSegmentCount());
+        assertFalse(resumed.isComplete(0));
+        assertTrue(resumed.isComplete(1));
+        assertFalse(resumed.isComplete(2));
+        assertEquals(150, resumed.getCompleteFrames());
+        assertEquals(250, resumed.getEndFrame(1));
+        assertEquals(300, resumed.getEndFrame(2));
+
+        resumed.delete();
+        assertFalse(dir.exists());
+    }
+
+    /**
+     * A manifest of another export, or with a segment file changed after it was complete, shouldn't be resumed.
+     */
+    @Test
+    void discardTest() throws IOException {
+        File dir = new File(Files.createTempDirectory("okt-manifest").toFile(), "out.mp4.parts");
+        ExportManifest manifest = ExportManifest.loadOrCreate(dir, "key", "mp4", SEGMENT_STARTS, 300);
+        Files.writeString(manifest.getSegmentFile(0).toPath(), "segment 0");
+        manifest.markComplete(0);
+        Files.writeString(manifest.getSegmentFile(1).toPath(), "segment 1");
+        manifest.markComplete(1);
+
+        // Changed segment.
+        Files.writeString(manifest.getSegmentFile(1).toPath(), "segment 1 changed");
+        ExportManifest changed = ExportManifest.loadOrCreate(dir, "key", "mp4", SEGMENT_STARTS, 300);
+        assertTrue(changed.isComplete(0));
+        assertFalse(changed.isComplete(1));
+
+        // Other key.
+        ExportManifest other = ExportManifest.loadOrCreate(dir, "other key", "mp4", SEGMENT_STARTS, 300);
+        assertEquals(0, other.getCompleteSegments());
+        assertFalse(other.getSegmentFile(0).exists());
+
+        other.delete();
+    }
+
+    /**
+     * Only the complete segments with changed fingerprints should be encoded again.
+     */
+    @Test
+    void fingerprintTest() throws IOException {
+        File dir = new File(Files.createTempDirectory("okt-manifest").toFile(), "out.mp4.parts");
+        ExportManifest manifest = ExportManifest.loadOrCreate(dir, "key", "mp4", SEGMENT_STARTS, 300);
+        assertEquals(0, manifest.updateFingerprints(new String[]{"a", "b", "c"}));
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(manifest.getSegmentFile(i).toPath(), "segment " + i);
+            manifest.markComplete(i);
+        }
+
+        ExportManifest next = ExportManifest.loadOrCreate(dir, "key", "mp4", SEGMENT_STARTS, 300);
+        assertEquals(1, next.updateFingerprints(new String[]{"a", "changed", "c"}));
+        assertTrue(next.isComplete(0));
+        assertFalse(next.isComplete(1));
+        assertFalse(next.getSegmentFile(1).exists());
+        assertTrue(next.isComplete(2));
+
+        // The new fingerprints are saved.
+        ExportManifest again = ExportManifest.loadOrCreate(dir, "key", "mp4", SEGMENT_STARTS, 300);
+        assertEquals(0, again.updateFingerprints(new String[]{"a", "changed", "c"}));
+        assertEquals(2, again.getCompleteSegments());
+
+        again.delete();
+    }
+}
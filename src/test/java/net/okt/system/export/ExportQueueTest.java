@@ -0,0 +1,110 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportQueueTest {
+    /**
+     * With one job at a time, the jobs should start by priority, then by the submitted order.
+     */
+    @Test
+    void priorityOrderTest() throws InterruptedException {
+        List<String> startOrder = Collections.synchronizedList(new ArrayList<>());
+        ExportQueue queue = new ExportQueue(1, 4);
+        int[] priorities = {0, 5, 0, 9, 5};
+        for (int i = 0; i < priorities.length; i++) {
+            String name = "job" + i;
+            queue.submit(new ExportJob(name, priorities[i], (threads, progress) -> {
+                startOrder.add(name);
+                throw new IllegalStateException("No video in this test.");
+            }));
+        }
+
+        List<ExportJob.Result> results = queue.runAll();
+
+        assertEquals(List.of("job3", "job1", "job4", "job0", "job2"), startOrder);
+        assertEquals(5, results.size());
+        for (ExportJob.Result result : results) {
+            assertEquals(ExportJob.State.FAILED, result.state());
+            assertTrue(result.message().contains("No video in this test."));
+        }
+    }
+
+    /**
+     * No more than the maximum number of jobs should run at the same time, and they should share the render threads.
+     */
+    @Test
+    void concurrencyLimitTest() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> givenThreads = Collections.synchronizedList(new ArrayList<>());
+        ExportQueue queue = new ExportQueue(3, 12);
+        for (int i = 0; i < 10; i++) {
+            queue.submit(new ExportJob("job" + i, 0, (threads, progress) -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                givenThreads.add(threads);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                throw new IllegalStateException("No video in this test.");
+            }));
+        }
+
+        queue.runAll();
+
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(10, givenThreads.size());
+        for (int threads : givenThreads)
+            assertEquals(4, threads);
+    }
+
+    /**
+     * A job cancelled while queued should never start.
+     */
+    @Test
+    void cancelQueuedJobTest() throws InterruptedException {
+        AtomicInteger started = new AtomicInteger();
+        ExportQueue queue = new ExportQueue(1, 1);
+        ExportJob cancelled = new ExportJob("cancelled", 0, (threads, progress) -> {
+            started.incrementAndGet();
+            return null;
+        });
+        queue.submit(cancelled);
+        cancelled.cancel();
+
+        List<ExportJob.Result> results = queue.runAll();
+
+        assertEquals(0, started.get());
+        assertEquals(ExportJob.State.CANCELLED, cancelled.getState());
+        assertEquals(1, results.size());
+        assertEquals(ExportJob.State.CANCELLED, results.get(0).state());
+    }
+
+    /**
+     * Waiting for the run from another thread, like the Ctrl+C hook does, should end when the run returns.
+     */
+    @Test
+    void awaitRunAllTest() throws InterruptedException {
+        ExportQueue queue = new ExportQueue(1, 1);
+        queue.submit(new ExportJob("job", 0, (threads, progress) -> {
+            Thread.sleep(20);
+            throw new IllegalStateException("No video in this test.");
+        }));
+        Thread runThread = new Thread(() -> {
+            try {
+                queue.runAll();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        runThread.start();
+
+        queue.awaitRunAll();
+        assertEquals(ExportJob.State.FAILED, queue.getJobs().get(0).getState());
+        runThread.join();
+    }
+}
@@ -0,0 +1,18 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameBufferPoolTest {
+    @Test
+    void sizeTest() {
+        // A 4K buffer is about 66 MB, so 1 GiB fits 16 of them.
+        assertEquals(3840L * 2160 * 8, FrameBufferPool.getBufferBytes(3840, 2160));
+        assertEquals(16, FrameBufferPool.getSize(1L << 30, 3840, 2160, 3, 34));
+
+        // Never more than needed, never less than the minimum.
+        assertEquals(10, FrameBufferPool.getSize(1L << 30, 1920, 1080, 3, 10));
+        assertEquals(3, FrameBufferPool.getSize(1L << 20, 3840, 2160, 3, 34));
+    }
+}
@@ -0,0 +1,77 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameReorderBufferTest {
+    /**
+     * Frames put in reverse order inside the window should still be taken in frame order.
+     */
+    @Test
+    void takeInFrameOrderTest() throws InterruptedException {
+        FrameReorderBuffer<Integer> buffer = new FrameReorderBuffer<>(4);
+        for (int i = 3; i >= 0; i--) {
+            assertTrue(buffer.awaitSlot(i));
+            buffer.put(i, i);
+        }
+
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, buffer.take());
+    }
+
+    /**
+     * Many producers rendering interleaved frames should never break the order the consumer sees.
+     */
+    @Test
+    void concurrentProducersTest() throws InterruptedException {
+        int totalFrames = 1000;
+        FrameReorderBuffer<Integer> buffer = new FrameReorderBuffer<>(8);
+        AtomicInteger nextFrame = new AtomicInteger();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    int i;
+                    while ((i = nextFrame.getAndIncrement()) < totalFrames) {
+                        if (!buffer.awaitSlot(i)) return;
+                        buffer.put(i, i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        for (int i = 0; i < totalFrames; i++)
+            assertEquals(i, buffer.take());
+
+        for (Thread producer : producers)
+            producer.join();
+    }
+
+    @Test
+    void failTest() {
+        FrameReorderBuffer<Integer> buffer = new FrameReorderBuffer<>(2);
+        buffer.fail(new RuntimeException("render failed"));
+
+        assertThrows(IllegalStateException.class, buffer::take);
+    }
+
+    @Test
+    void closeReleasesProducersTest() throws InterruptedException {
+        FrameReorderBuffer<Integer> buffer = new FrameReorderBuffer<>(1);
+        buffer.close();
+
+        // Frame 5 is outside the window, but a closed buffer should not block.
+        assertFalse(buffer.awaitSlot(5));
+        assertNull(buffer.take());
+    }
+}
@@ -0,0 +1,39 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressSamplerTest {
+    @Test
+    void sampleTest() throws InterruptedException {
+        ExportProgress progress = new ExportProgress();
+        progress.setTotal(200);
+        ProgressSampler sampler = new ProgressSampler(progress);
+
+        // Nothing is recorded yet, so the ETA is unknown.
+        ProgressSampler.Sample sample = sampler.sample();
+        assertEquals(ExportProgress.State.RUNNING, sample.state());
+        assertEquals(-1, sample.eta());
+
+        // Resumed frames count as recorded, but not in the rates.
+        progress.addSkippedFrames(100);
+        Thread.sleep(20);
+        for (int i = 0; i < 50; i++) {
+            progress.frameRendered();
+            progress.frameRecorded();
+        }
+        Thread.sleep(20);
+        sample = sampler.sample();
+        assertEquals(150, sample.recordedFrames());
+        assertEquals(75, sample.getPercent());
+        assertTrue(sample.renderFps() > 0);
+        // 50 frames were exported in the elapsed time, so 50 frames left take about as long.
+        assertTrue(sample.eta() >= 0 && sample.eta() <= sample.elapsedTime() + 1);
+        assertTrue(sample.describe().startsWith("frames: 150/200 (75%) | render "));
+
+        progress.finish("Done");
+        assertEquals(ExportProgress.State.FINISHED, sampler.sample().state());
+        assertEquals("Done", progress.getMessage());
+    }
+}
@@ -0,0 +1,58 @@
+package net.okt.system.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawVideoWriterTest {
+    @Test
+    void rgbaTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RawVideoWriter writer = new RawVideoWriter(out, RawVideoWriter.Format.RGBA, 2, 1, 30)) {
+            writer.write(new int[]{0x80FF0000, 0xFF00FF00});
+        }
+
+        // No header, just the bytes of the pixels.
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0, 0, (byte) 0x80, 0, (byte) 0xFF, 0, (byte) 0xFF},
+                out.toByteArray());
+    }
+
+    @Test
+    void y4mTest() throws IOException {
+        int[] white = new int[3 * 3];
+        Arrays.fill(white, 0xFFFFFFFF);
+        int[] black = new int[3 * 3];
+        Arrays.fill(black, 0xFF000000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RawVideoWriter writer = new RawVideoWriter(out, RawVideoWriter.Format.Y4M, 3, 3, 25)) {
+            writer.write(white);
+            writer.write(black);
+        }
+
+        String header = "YUV4MPEG2 W3 H3 F25:1 Ip A1:1 C420jpeg XCOLORRANGE=LIMITED\n";
+        byte[] bytes = out.toByteArray();
+        assertEquals(header, new String(bytes, 0, header.length(), StandardCharsets.US_ASCII));
+
+        // An odd size rounds the chroma planes up: 9 luma and 2 * 4 chroma bytes per frame.
+        int frameSize = "FRAME\n".length() + 9 + 8;
+        assertEquals(header.length() + frameSize * 2, bytes.length);
+
+        // White and black are the limits of the limited range, with a neutral chroma.
+        int whiteFrame = header.length() + "FRAME\n".length();
+        int blackFrame = whiteFrame + frameSize;
+        for (int i = 0; i < 9; i++) {
+            assertEquals(235, bytes[whiteFrame + i] & 0xFF);
+            assertEquals(16, bytes[blackFrame + i] & 0xFF);
+        }
+        for (int i = 9; i < 17; i++) {
+            assertEquals(128, bytes[whiteFrame + i] & 0xFF);
+            assertEquals(128, bytes[blackFrame + i] & 0xFF);
+        }
+    }
+}
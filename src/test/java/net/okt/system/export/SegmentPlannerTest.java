@@ -0,0 +1,99 @@
+package net.okt.system.export;
+
+import net.okt.system.SaveLoadManager;
+import net.okt.system.render.ProjectSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentPlannerTest {
+    @Test
+    void paragraphGapTimesTest() {
+        Map<String, String> props = new SaveLoadManager(null).copyProps();
+        props.put("text", "一二\n三四\n\nfive six\n\nseven");
+        props.put("dotsPeriod", "200");
+        props.put("textDisappearTime", "100");
+        List<Integer> marks = List.of(100, 200, 300, 400, 500, 2000, 2100, 2200, 2250, 2300);
+        ProjectSnapshot snapshot = new ProjectSnapshot(props, marks, new Font(Font.SANS_SERIF, Font.BOLD, 1));
+
+        // The first gap is between 500 + 100 and 2000 - 200. The second one has no static part, so the middle of the
+        // two marks is used.
+        assertEquals(List.of(1200, 2225), SegmentPlanner.getParagraphGapTimes(snapshot));
+    }
+
+    /**
+     * Only the segments with changed frames should get another fingerprint.
+     */
+    @Test
+    void contentFingerprintsTest() {
+        Map<String, String> props = new SaveLoadManager(null).copyProps();
+        props.put("text", "一二\n三四\n\nfive six\n\nseven");
+        props.put("dotsPeriod", "200");
+        props.put("textDisappearTime", "100");
+        List<Integer> marks = List.of(100, 200, 300, 400, 500, 2000, 2100, 2200, 2250, 2300);
+        Font font = new Font(Font.SANS_SERIF, Font.BOLD, 1);
+        ProjectSnapshot snapshot = new ProjectSnapshot(props, marks, font);
+
+        // 30 fps, 3 seconds, cut in the gap between the first 2 paragraphs.
+        float frameLength = 1000f / 30;
+        int[] segmentStarts = {0, 36};
+        String[] fingerprints = SegmentPlanner.getContentFingerprints(snapshot, segmentStarts, 90, frameLength);
+        assertArrayEquals(fingerprints, SegmentPlanner.getContentFingerprints(
+                new ProjectSnapshot(props, marks, font), segmentStarts, 90, frameLength));
+
+        // A moved mark in the second paragraph.
+        List<Integer> movedMarks = List.of(100, 200, 300, 400, 500, 2000, 2150, 2200, 2250, 2300);
+        String[] moved = SegmentPlanner.getContentFingerprints(new ProjectSnapshot(props, movedMarks, font),
+                segmentStarts, 90, frameLength);
+        assertEquals(fingerprints[0], moved[0]);
+        assertNotEquals(fingerprints[1], moved[1]);
+
+        // An edited line in the first paragraph.
+        Map<String, String> editedProps = new HashMap<>(props);
+        editedProps.put("text", "一二\n三五\n\nfive six\n\nseven");
+        String[] edited = SegmentPlanner.getContentFingerprints(new ProjectSnapshot(editedProps, marks, font),
+                segmentStarts, 90, frameLength);
+        assertNotEquals(fingerprints[0], edited[0]);
+        assertEquals(fingerprints[1], edited[1]);
+
+        // A changed style changes everything.
+        String[] restyled = SegmentPlanner.getContentFingerprints(snapshot.withProps(Map.of("textColor", "0")),
+                segmentStarts, 90, frameLength);
+        assertNotEquals(fingerprints[0], restyled[0]);
+        assertNotEquals(fingerprints[1], restyled[1]);
+    }
+
+    @Test
+    void planSegmentsTest() {
+        // 30 fps, 10 seconds.
+        float frameLength = 1000f / 30;
+        List<Integer> gapTimes = List.of(1000, 2400, 5100, 7000, 9900);
+
+        // The cuts should be the gaps nearest to the even split.
+        assertArrayEquals(new int[]{0}, SegmentPlanner.planSegments(gapTimes, 300, frameLength, 1));
+        assertArrayEquals(new int[]{0, 153}, SegmentPlanner.planSegments(gapTimes, 300, frameLength, 2));
+        assertArrayEquals(new int[]{0, 72, 153, 211}, SegmentPlanner.planSegments(gapTimes, 300, frameLength, 4));
+    }
+
+    @Test
+    void planSegmentsWithoutGapsTest() {
+        // Never cut at a frame that isn't a gap, and never make an empty segment.
+        assertArrayEquals(new int[]{0}, SegmentPlanner.planSegments(List.of(), 300, 1000f / 30, 8));
+        assertArrayEquals(new int[]{0, 31}, SegmentPlanner.planSegments(List.of(0, 1000, 1000), 300, 1000f / 30, 8));
+    }
+
+    @Test
+    void planSegmentsAnywhereTest() {
+        // 30 fps, 10 seconds. The gap at frame 30 is too far from the split at 75, and the one at 153 is used.
+        float frameLength = 1000f / 30;
+        assertArrayEquals(new int[]{0, 75, 153, 225},
+                SegmentPlanner.planSegments(List.of(1000, 5100), 300, frameLength, 4, true));
+        assertArrayEquals(new int[]{0, 75, 150, 225},
+                SegmentPlanner.planSegments(List.of(), 300, frameLength, 4, true));
+    }
+}
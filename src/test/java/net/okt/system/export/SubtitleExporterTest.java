@@ -0,0 +1,92 @@
+package net.okt.system.export;
+
+import net.okt.system.SaveLoadManager;
+import net.okt.system.render.ProjectSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleExporterTest {
+    /**
+     * A small project with 2 paragraphs, like the one of the renderer test.
+     */
+    private static ProjectSnapshot getSnapshot() {
+        return getSnapshot(List.of(100, 200, 300, 400, 900, 1000, 1100, 1200));
+    }
+
+    private static ProjectSnapshot getSnapshot(List<Integer> marks) {
+        Map<String, String> props = new SaveLoadManager(null).copyProps();
+        props.put("resolutionX", "320");
+        props.put("resolutionY", "180");
+        props.put("text", """
+                一二
+                三'四
+
+                five six_teen""");
+        props.put("dotsPeriod", "200");
+        props.put("textDisappearTime", "100");
+
+        return new ProjectSnapshot(props, marks, new Font(Font.SANS_SERIF, Font.BOLD, 1));
+    }
+
+    @Test
+    void cuesTest() {
+        List<SubtitleExporter.Cue> cues = new SubtitleExporter(getSnapshot()).getCues();
+        assertEquals(3, cues.size());
+
+        // The first paragraph shows its 2 lines from the ready dots to the disappear time.
+        assertEquals(new SubtitleExporter.Cue(0, 500, 0, List.of(
+                new SubtitleExporter.Syllable("一", 100, 200),
+                new SubtitleExporter.Syllable("二", 200, 300)
+        )), cues.get(0));
+        assertEquals(new SubtitleExporter.Cue(0, 500, 1, List.of(
+                new SubtitleExporter.Syllable("三四", 300, 400)
+        )), cues.get(1));
+
+        // A word split by "_" is joined back, and the next word gets a space.
+        assertEquals(new SubtitleExporter.Cue(700, 1300, 0, List.of(
+                new SubtitleExporter.Syllable("five", 900, 1000),
+                new SubtitleExporter.Syllable(" six", 1000, 1100),
+                new SubtitleExporter.Syllable("teen", 1100, 1200)
+        )), cues.get(2));
+    }
+
+    @Test
+    void formatTest() {
+        SubtitleExporter exporter = new SubtitleExporter(getSnapshot());
+
+        StringWriter ass = new StringWriter();
+        exporter.writeAss(ass);
+        assertTrue(ass.toString().contains("Dialogue: 0,0:00:00.70,0:00:01.30,Lyrics,,0,0,0,,"));
+        assertTrue(ass.toString().contains("{\\k20}{\\kf10}five{\\kf10} six{\\kf10}teen"));
+
+        StringWriter vtt = new StringWriter();
+        exporter.writeWebVtt(vtt);
+        assertTrue(vtt.toString().startsWith("WEBVTT"));
+        assertTrue(vtt.toString().contains("five<00:00:01.000> six<00:00:01.100>teen"));
+    }
+
+    /**
+     * The words after the last mark have no time, and should stay not sung until the line is gone.
+     */
+    @Test
+    void partlyMarkedTest() {
+        SubtitleExporter exporter = new SubtitleExporter(getSnapshot(List.of(100, 200, 300, 400, 900, 1000, 1100)));
+        SubtitleExporter.Cue cue = exporter.getCues().get(2);
+        assertEquals(new SubtitleExporter.Syllable("teen", -1, -1), cue.syllables().get(2));
+
+        // In a syllable of its own, not wiped with the one before it.
+        StringWriter ass = new StringWriter();
+        exporter.writeAss(ass);
+        assertTrue(ass.toString().contains("{\\kf10} six{\\k0}teen"));
+
+        StringWriter vtt = new StringWriter();
+        exporter.writeWebVtt(vtt);
+        assertTrue(vtt.toString().contains("<00:00:01.000> six<c.unsung>teen</c>"));
+    }
+}
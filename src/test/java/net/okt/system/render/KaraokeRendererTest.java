@@ -0,0 +1,216 @@
+package net.okt.system.render;
+
+import net.okt.system.SaveLoadManager;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KaraokeRendererTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 180;
+    private static final int[] TIMES = {0, 50, 150, 250, 420, 560, 750, 950, 1500, 3000};
+
+    private final KaraokeRenderer renderer = new KaraokeRenderer(getSnapshot());
+
+    /**
+     * A small project with 2 paragraphs, rendered at a low resolution.
+     */
+    private static ProjectSnapshot getSnapshot() {
+        // No main frame needed, the manager is only used for the default properties.
+        Map<String, String> props = new SaveLoadManager(null).copyProps();
+        props.put("resolutionX", String.valueOf(WIDTH));
+        props.put("resolutionY", String.valueOf(HEIGHT));
+        props.put("text", """
+                一二
+                三'四
+
+                five six_teen""");
+        props.put("dotsPeriod", "200");
+        props.put("textDisappearTime", "100");
+
+        List<Integer> marks = List.of(100, 200, 300, 400, 900, 1000, 1100, 1200);
+        return new ProjectSnapshot(props, marks, new Font(Font.SANS_SERIF, Font.BOLD, 1));
+    }
+
+    private int[] render(int time) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        renderer.render(time, pixels);
+        return pixels;
+    }
+
+    /**
+     * Rendering the same time twice should give the same pixels, and the lyrics should actually be drawn.
+     */
+    @Test
+    void deterministicTest() {
+        int[] first = render(250);
+        assertArrayEquals(first, render(250));
+
+        int background = new SaveLoadManager(null).getPropInt("backgroundColor");
+        boolean hasText = false;
+        for (int pixel : first) {
+            if (pixel != background) {
+                hasText = true;
+                break;
+            }
+        }
+        assertTrue(hasText);
+    }
+
+    /**
+     * Frames rendered at the same time on many threads should be the same as the ones rendered one by one.
+     */
+    @Test
+    void concurrentRenderTest() throws InterruptedException {
+        int[][] expected = new int[TIMES.length][];
+        for (int i = 0; i < TIMES.length; i++)
+            expected[i] = render(TIMES[i]);
+
+        KaraokeRenderer sharedRenderer = new KaraokeRenderer(getSnapshot());
+        int[][] actual = new int[TIMES.length][];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < TIMES.length; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> {
+                int[] pixels = new int[WIDTH * HEIGHT];
+                sharedRenderer.render(TIMES[index], pixels);
+                actual[index] = pixels;
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 0; i < TIMES.length; i++)
+            assertArrayEquals(expected[i], actual[i], "Frame at " + TIMES[i] + "ms differs.");
+    }
+
+    /**
+     * Frames with equal states should have the same pixels, and the frames in a paragraph gap should share a state.
+     */
+    @Test
+    void frameStateTest() {
+        for (int time = 0; time < 1300; time += 10) {
+            FrameState state = renderer.getFrameState(time);
+            FrameState nextState = renderer.getFrameState(time + 10);
+            if (state.equals(nextState))
+                assertArrayEquals(render(time), render(time + 10), "Frames at " + time + "ms should be the same.");
+        }
+
+        // 550ms is after the first paragraph disappears and before the ready dots of the second paragraph.
+        assertFalse(renderer.getFrameState(550).shouldDisplayText());
+        assertEquals(renderer.getFrameState(550), renderer.getFrameState(560));
+    }
+
+    /**
+     * The wipe of the first line should go forward through both its marks, and stay at the line end after them.
+     */
+    @Test
+    void wipeWidthTest() {
+        assertEquals(0.0, renderer.getFrameState(99).topWipeWidth());
+
+        double last = 0;
+        for (int time = 101; time <= 300; time++) {
+            FrameState state = renderer.getFrameState(time);
+            assertEquals(0, state.topLine());
+            assertTrue(state.topWipeWidth() >= last, "The wipe goes back at " + time + "ms.");
+            last = state.topWipeWidth();
+        }
+        assertTrue(last > renderer.getFrameState(200).topWipeWidth());
+        assertEquals(last, renderer.getFrameState(301).topWipeWidth());
+    }
+
+    /**
+     * Updating a persistent image by the dirty regions should give the same pixels as rendering every frame in full,
+     * also when the image is a few frames behind, like a reused frame buffer.
+     */
+    @Test
+    void dirtyRegionTest() {
+        for (int step : new int[]{10, 40}) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            FrameState previous = null;
+            for (int time = 0; time < 1600; time += step) {
+                FrameState state = renderer.getFrameState(time);
+                List<Rectangle> dirtyRegions = renderer.render(state, previous, image);
+                assertArrayEquals(render(time), pixels, "Frame at " + time + "ms differs.");
+
+                if (previous == null)
+                    assertEquals(List.of(new Rectangle(0, 0, WIDTH, HEIGHT)), dirtyRegions);
+                else if (previous.equals(state))
+                    assertTrue(dirtyRegions.isEmpty());
+                previous = state;
+            }
+        }
+
+        // Only the wipe edge changes in the middle of a word.
+        FrameState from = renderer.getFrameState(150);
+        FrameState to = renderer.getFrameState(160);
+        assertEquals(from.topLine(), to.topLine());
+        int dirtyArea = 0;
+        for (Rectangle region : renderer.getDirtyRegions(from, to, WIDTH, HEIGHT))
+            dirtyArea += region.width * region.height;
+        assertTrue(dirtyArea > 0 && dirtyArea < WIDTH * HEIGHT / 10);
+    }
+
+    /**
+     * Copying the pixels of the line sprites should look the same as intersecting the outlines, except for the pixels
+     * around the wipe edge, where the intersection strokes its outline along the cut and the sprites copy a strip
+     * instead. Also with the dirty regions.
+     */
+    @Test
+    void spriteWipeTest() {
+        assertWipeCloseToIntersect(KaraokeRenderer.WipeMode.SPRITE);
+    }
+
+    private void assertWipeCloseToIntersect(KaraokeRenderer.WipeMode wipeMode) {
+        int width = 1280, height = 720;
+        ProjectSnapshot snapshot = getSnapshot().withProps(Map.of(
+                "resolutionX", String.valueOf(width), "resolutionY", String.valueOf(height)));
+        KaraokeRenderer intersectRenderer = new KaraokeRenderer(snapshot, false, KaraokeRenderer.WipeMode.INTERSECT);
+        KaraokeRenderer wipeRenderer = new KaraokeRenderer(snapshot, false, wipeMode);
+
+        float scale = toDrawSize(snapshot, "defaultFontSize");
+        int textX = toDrawSize(snapshot, "textPosX");
+        int bottomX = textX + toDrawSize(snapshot, "indentSize");
+        int strokeWidth = (int) (toDrawSize(snapshot, "intersectStroke") * 0.01);
+
+        BufferedImage wipeImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] wipePixels = ((DataBufferInt) wipeImage.getRaster().getDataBuffer()).getData();
+        FrameState previous = null;
+        for (int time = 0; time < 1400; time += 10) {
+            FrameState state = intersectRenderer.getFrameState(time);
+            BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            intersectRenderer.render(state, expected);
+            wipeRenderer.render(state, previous, wipeImage);
+            previous = state;
+
+            int[] expectedPixels = ((DataBufferInt) expected.getRaster().getDataBuffer()).getData();
+            double topWipeX = textX + state.topWipeWidth() * scale;
+            double bottomWipeX = bottomX + state.bottomWipeWidth() * scale;
+            int farPixels = 0;
+            for (int i = 0; i < expectedPixels.length; i++) {
+                if (expectedPixels[i] == wipePixels[i]) continue;
+
+                int x = i % width;
+                double distance = Math.min(Math.abs(x - topWipeX), Math.abs(x - bottomWipeX));
+                if (distance > strokeWidth * 3) farPixels++;
+            }
+            // The intersection redraws the curves of the cut glyph, which can move a single pixel anywhere in it.
+            assertTrue(farPixels <= 2,
+                    farPixels + " pixels differ away from the wipe edges at " + time + "ms in " + wipeMode + ".");
+        }
+    }
+
+    private static int toDrawSize(ProjectSnapshot snapshot, String key) {
+        return (int) (snapshot.getPropInt(key) * snapshot.getPropInt("resolutionX") * 0.01);
+    }
+}
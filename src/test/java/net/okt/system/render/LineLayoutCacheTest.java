@@ -0,0 +1,101 @@
+package net.okt.system.render;
+
+import net.okt.system.SaveLoadManager;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineLayoutCacheTest {
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.BOLD, 1);
+
+    @Test
+    void lruTest() {
+        LineLayoutCache cache = new LineLayoutCache(2);
+        AtomicInteger builds = new AtomicInteger();
+        LineLayoutCache.Key a = new LineLayoutCache.Key("a", FONT, 10, 7, 192);
+        LineLayoutCache.Key b = new LineLayoutCache.Key("b", FONT, 10, 7, 192);
+        LineLayoutCache.Key c = new LineLayoutCache.Key("c", FONT, 10, 7, 192);
+
+        LineLayout layoutA = cache.get(a, key -> build(builds));
+        assertSame(layoutA, cache.get(new LineLayoutCache.Key("a", FONT, 10, 7, 192), key -> build(builds)));
+        assertEquals(1, builds.get());
+
+        // "a" is used more recently than "b", so "b" is the one dropped.
+        cache.get(b, key -> build(builds));
+        cache.get(a, key -> build(builds));
+        cache.get(c, key -> build(builds));
+        assertEquals(2, cache.size());
+        assertEquals(3, builds.get());
+        assertSame(layoutA, cache.get(a, key -> build(builds)));
+        cache.get(b, key -> build(builds));
+        assertEquals(4, builds.get());
+
+        // Another size is another layout.
+        assertNotSame(layoutA, cache.get(new LineLayoutCache.Key("a", FONT, 10, 7, 96), key -> build(builds)));
+    }
+
+    /**
+     * A renderer of a changed project should reuse the layouts of the lines that haven't changed.
+     */
+    @Test
+    void sharedBetweenRenderersTest() {
+        Map<String, String> props = new SaveLoadManager(null).copyProps();
+        props.put("text", "shared line\nfirst");
+        List<Integer> marks = List.of(100, 200, 300, 400, 500);
+        KaraokeRenderer renderer = new KaraokeRenderer(new ProjectSnapshot(props, marks, FONT));
+        renderer.getFrameState(150);
+
+        props.put("text", "shared line\nsecond");
+        int cached = LineLayoutCache.SHARED.size();
+        KaraokeRenderer changed = new KaraokeRenderer(new ProjectSnapshot(props, marks, FONT));
+        changed.getFrameState(150);
+        // Only the changed line is added.
+        assertEquals(cached + 1, LineLayoutCache.SHARED.size());
+    }
+
+    /**
+     * A new prefetch should stop the running one and drop the waiting one, so only the newest lines are built.
+     */
+    @Test
+    void prefetchReplacedTest() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch lastDone = new CountDownLatch(1);
+        List<String> built = Collections.synchronizedList(new ArrayList<>());
+
+        LineLayoutCache.prefetch(3, line -> {
+            built.add("first" + line);
+            firstStarted.countDown();
+            try {
+                releaseFirst.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        LineLayoutCache.prefetch(3, line -> built.add("second" + line));
+        LineLayoutCache.prefetch(3, line -> {
+            built.add("last" + line);
+            if (line == 2) lastDone.countDown();
+        });
+        releaseFirst.countDown();
+
+        assertTrue(lastDone.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first0", "last0", "last1", "last2"), built);
+    }
+
+    private static LineLayout build(AtomicInteger builds) {
+        builds.incrementAndGet();
+        return new LineLayout(FONT.createGlyphVector(new FontRenderContext(null, true, true), "x"), 1);
+    }
+}
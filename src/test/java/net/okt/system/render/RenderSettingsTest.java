@@ -0,0 +1,50 @@
+package net.okt.system.render;
+
+import net.okt.system.SaveLoadManager;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderSettingsTest {
+    @Test
+    void parseTest() {
+        SaveLoadManager saveLoadManager = new SaveLoadManager(null);
+        saveLoadManager.setProp("resolutionX", 1000);
+        saveLoadManager.setProp("textPosY", 20);
+        saveLoadManager.setProp("intersectStroke", 48);
+        saveLoadManager.setProp("backgroundColor", 0x00FFFFFF);
+
+        RenderSettings settings = saveLoadManager.getRenderSettings();
+        assertEquals(1000, settings.getResolutionX());
+        assertEquals(200, settings.getTextPosY());
+        assertEquals(4, settings.getIntersectStrokeWidth()); // 1% of the 480 pixels.
+        assertEquals(0, settings.getBackgroundColor().getAlpha());
+        assertEquals(new BasicStroke(4, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL), settings.getIntersectStroke());
+    }
+
+    /**
+     * The settings should only be parsed again, and pushed to the listeners, when a property of them changes.
+     */
+    @Test
+    void listenerTest() {
+        SaveLoadManager saveLoadManager = new SaveLoadManager(null);
+        List<RenderSettings> pushed = new ArrayList<>();
+        saveLoadManager.addRenderSettingsListener(pushed::add);
+
+        RenderSettings settings = saveLoadManager.getRenderSettings();
+        saveLoadManager.setProp("text", "lyrics");
+        assertTrue(pushed.isEmpty());
+        assertSame(settings, saveLoadManager.getRenderSettings());
+
+        saveLoadManager.setProp("textColor", Color.RED.getRGB());
+        assertEquals(1, pushed.size());
+        assertEquals(Color.RED, pushed.get(0).getTextColor());
+        assertSame(pushed.get(0), saveLoadManager.getRenderSettings());
+        assertSame(pushed.get(0), ProjectSnapshot.of(saveLoadManager, new Font(Font.SANS_SERIF, Font.BOLD, 1))
+                .getRenderSettings());
+    }
+}